@@ -7,18 +7,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.audiosolutions.core.service.backup.DatabaseBackup;
+import de.kobich.audiosolutions.core.service.persist.DatabaseMaintenanceService;
 import de.kobich.commons.concurrent.DirectoryLock;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.ProgressSupport;
@@ -28,12 +30,31 @@ import lombok.Getter;
 
 public class AudioSolutions {
 	private static final Logger logger = Logger.getLogger(AudioSolutions.class);
-	public static final AudioSolutionsVersion CURRENT_VERSION = AudioSolutionsVersion.V10_0;
+	public static final AudioSolutionsVersion CURRENT_VERSION = AudioSolutionsVersion.V10_2;
 	public static final record DBConnectionSetting(String url, String user, String password) {}
+	/**
+	 * Connection handling of the embedded database
+	 */
+	public static enum DBDataSourceMode {
+		/** Atomikos pool with JTA support */
+		ATOMIKOS, 
+		/** Lightweight JDBC pool (HikariCP) */
+		POOLED, 
+		/** New in-process connection for each transaction (no pool) */
+		DIRECT
+	}
 	public static final String VERSION_PROP = "audiosolutions.version";
 	public static final String UI_DEBUG_PROP = "audiosolutions.ui.debug";
 	public static final String DB_DEBUG_PROP = "audiosolutions.db.debug";
 	public static final String DB_EXISTS_PROP = "audiosolutions.db.exists";
+	public static final String DB_CACHE_PROP = "audiosolutions.db.cache";
+	public static final String DB_DATASOURCE_PROP = "audiosolutions.db.datasource";
+	public static final String DB_BACKUP_RETENTION_PROP = "audiosolutions.db.backup.retention";
+	public static final String SEARCH_INDEX_PROP = "audiosolutions.search.index";
+	public static final String SEARCH_THREADS_PROP = "audiosolutions.search.threads";
+	public static final String SEARCH_VIRTUAL_THREADS_PROP = "audiosolutions.search.virtualThreads";
+	public static final String SEARCH_CACHE_SIZE_PROP = "audiosolutions.search.cache.size";
+	private static final int DB_BACKUP_RETENTION_DEFAULT = 5;
 	private static DirectoryLock lock;
 	private static Properties properties;
 	private static File propertiesFile;
@@ -51,6 +72,16 @@ public class AudioSolutions {
 	 */
 	@Getter
 	private static File coverArtRootDir;
+	/**
+	 * Returns the database backup dir
+	 */
+	@Getter
+	private static File dbBackupDir;
+	/**
+	 * Returns the directory of the text search index files
+	 */
+	@Getter
+	private static File searchIndexDir;
 	
 	private static final AudioSolutionsSpringContext springContext = new AudioSolutionsSpringContext();
 	
@@ -96,6 +127,13 @@ public class AudioSolutions {
 				System.setProperty(AudioSolutions.DB_EXISTS_PROP, Boolean.TRUE.toString());
 			}
 	
+			AudioSolutions.dbBackupDir = new File(dataRootDirectory, "db_backup");
+			logger.info("DB backup dir: " + dbBackupDir.getAbsolutePath());
+			
+			// -- text search index dir (next to the database files)
+			AudioSolutions.searchIndexDir = new File(dataRootDirectory, "search_index");
+			logger.info("Search index dir: " + searchIndexDir.getAbsolutePath());
+	
 			// -- database connection url
 			String url = String.format("jdbc:hsqldb:file:%s/audiodb;shutdown=false;ifexists=false;hsqldb.default_table_type=cached", dbRootDir.getAbsolutePath());
 			AudioSolutions.dbConnectionSetting = new DBConnectionSetting(url, "sa", "");
@@ -144,20 +182,14 @@ public class AudioSolutions {
 			progressSupport.monitorBeginTask("Migrate to version " + CURRENT_VERSION.getLabel());
 			
 			progressSupport.monitorSubTask("Creating backup", 1);
-			String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_hhmmss"));
-			File dbBackupDir = new File(AudioSolutions.dataRootDir, "db_backup_" + timestamp);
-			FileUtils.copyDirectory(AudioSolutions.dbRootDir, dbBackupDir);
-			logger.info("DB backup created to: " + dbBackupDir.getAbsolutePath());
+			try (Connection connection = getDbConnection()) {
+				DatabaseBackup databaseBackup = getDatabaseBackup();
+				File backupFile = databaseBackup.backup(connection, progressMonitor);
+				databaseBackup.verify(backupFile, progressMonitor);
+			}
 
 			progressSupport.monitorSubTask("Start migration", 1);
-			final AudioSolutionsVersion sourceVersion = AudioSolutionsVersion.parse(properties.getProperty(VERSION_PROP)).orElseThrow();
-			AudioSolutionsVersion tmpVersion = sourceVersion;
-			while (!tmpVersion.equals(CURRENT_VERSION)) {
-				tmpVersion = AudioSolutionsMigration.migrate(tmpVersion, AudioSolutions.dataRootDir, getDbConnectionSetting(), progressMonitor);
-				
-				properties.put(VERSION_PROP, tmpVersion.getLabel());
-				writeProperties();
-			}
+			migrateToCurrentVersion(progressMonitor);
 			
 			progressSupport.monitorEndTask("Migration finished");
 		}
@@ -167,9 +199,62 @@ public class AudioSolutions {
 		}
 	}
 	
+	/**
+	 * Migrates the database from the version of the properties file step by step to the current version
+	 */
+	private static void migrateToCurrentVersion(IServiceProgressMonitor progressMonitor) throws Exception {
+		final AudioSolutionsVersion sourceVersion = AudioSolutionsVersion.parse(properties.getProperty(VERSION_PROP)).orElseThrow();
+		AudioSolutionsVersion tmpVersion = sourceVersion;
+		while (!tmpVersion.equals(CURRENT_VERSION)) {
+			tmpVersion = AudioSolutionsMigration.migrate(tmpVersion, AudioSolutions.dataRootDir, getDbConnectionSetting(), progressMonitor);
+			
+			properties.put(VERSION_PROP, tmpVersion.getLabel());
+			writeProperties();
+		}
+	}
+	
+	/**
+	 * Replaces the database by the given backup: must be called before the spring context is started.
+	 * A backup of an older version is migrated to the current version.
+	 * @param backupFile
+	 * @param progressMonitor
+	 */
+	public static void restore(File backupFile, IServiceProgressMonitor progressMonitor) throws AudioException {
+		checkInitialized();
+		String restoredVersion;
+		try (Connection connection = getDbConnection()) {
+			restoredVersion = getDatabaseBackup().restore(backupFile, AudioSolutions.dbRootDir, connection, progressMonitor);
+			System.setProperty(AudioSolutions.DB_EXISTS_PROP, Boolean.TRUE.toString());
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.DB_BACKUP_ERROR, exc);
+		}
+		
+		try {
+			properties.put(VERSION_PROP, restoredVersion);
+			writeProperties();
+			migrateToCurrentVersion(progressMonitor);
+		}
+		catch (Exception exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.DB_MIGRATION_ERROR);
+		}
+	}
+	
+	/**
+	 * Returns the database backups
+	 */
+	public static DatabaseBackup getDatabaseBackup() {
+		checkInitialized();
+		return new DatabaseBackup(AudioSolutions.dbBackupDir, Integer.getInteger(DB_BACKUP_RETENTION_PROP, DB_BACKUP_RETENTION_DEFAULT), properties.getProperty(VERSION_PROP));
+	}
+	
 	public static void initSpringContext() {
 		checkInitialized();
 		AudioSolutions.springContext.startup();
+		// the services are created lazily: the transaction log must be switched on before the first import
+		getService(DatabaseMaintenanceService.class).resetTransactionLog();
 	}
 	
 	public static <T> T getService(Class<T> clazz) {
@@ -189,11 +274,13 @@ public class AudioSolutions {
 		AudioSolutions.commandDefinitionDir = null;
 		AudioSolutions.coverArtRootDir = null;
 		AudioSolutions.dataRootDir = null;
+		AudioSolutions.dbBackupDir = null;
 		AudioSolutions.dbConnectionSetting = null;
 		AudioSolutions.dbRootDir = null;
 		AudioSolutions.lock = null;
 		AudioSolutions.properties = null;
 		AudioSolutions.propertiesFile = null;
+		AudioSolutions.searchIndexDir = null;
 	}
 	
 	/**
@@ -233,6 +320,10 @@ public class AudioSolutions {
 		return dataRootDir != null && dbRootDir != null && commandDefinitionDir != null && coverArtRootDir != null; 
 	}
 	
+	private static Connection getDbConnection() throws SQLException {
+		return DriverManager.getConnection(dbConnectionSetting.url(), dbConnectionSetting.user(), dbConnectionSetting.password());
+	}
+	
 	private static void writeProperties() throws FileNotFoundException, IOException {
 		try (OutputStream out = new FileOutputStream(propertiesFile)) {
 			properties.store(out, "AudioSolutions");
@@ -33,6 +33,10 @@ import lombok.RequiredArgsConstructor;
  */
 class AudioSolutionsMigration {
 	private static final Logger logger = Logger.getLogger(AudioSolutionsMigration.class);
+	/**
+	 * Must match the allocationSize of the entities' sequence generators
+	 */
+	private static final int ID_ALLOCATION_SIZE = 50;
 	
 	@RequiredArgsConstructor
 	private enum AudioTable {
@@ -75,11 +79,15 @@ class AudioSolutionsMigration {
 					case V9_0:
 						return migrateV9(connection, dataRootDirectory);
 					case V10_0:
+						return migrateV10(connection, dataRootDirectory);
+					case V10_1:
+						return migrateV10_1(connection, dataRootDirectory);
+					case V10_2:
 					default:
 //						URL sqlScriptUrl = AudioSolutionsMigration.class.getResource("/db/migration/migrate-8.0.sql");
 //						EncodedResource sqlScript = new EncodedResource(new PathResource(sqlScriptUrl.toURI()));
 //						ScriptUtils.executeSqlScript(connection, sqlScript);
-						return AudioSolutionsVersion.V10_0;
+						return AudioSolutionsVersion.V10_2;
 				}
 			}
 			catch (SQLException e) {
@@ -241,6 +249,54 @@ class AudioSolutionsMigration {
 		return AudioSolutionsVersion.V10_0;
 	}
 	
+	/**
+	 * Migrates the DB from v10 to v10.1: 
+	 */
+	private static AudioSolutionsVersion migrateV10(Connection connection, File dataRootDirectory) throws Exception {
+		// ================================================================
+		// 1. create sequences for ID generation (identity columns prevent JDBC batching)
+		// ================================================================
+		try (Statement stmt = connection.createStatement()) {
+			for (AudioTable table : AudioTable.values()) {
+				final String sequenceName = table.getName() + "_SEQ";
+				// Hibernate's pooled optimizer hands out the IDs (value - allocationSize, value]
+				long startWith = getMaxId(stmt, table.getName()) + ID_ALLOCATION_SIZE;
+				if (existsSequence(stmt, sequenceName)) {
+					logAndExecute(stmt, String.format("ALTER SEQUENCE %s RESTART WITH %d", sequenceName, startWith));
+				}
+				else {
+					logAndExecute(stmt, String.format("CREATE SEQUENCE %s AS BIGINT START WITH %d INCREMENT BY %d", sequenceName, startWith, ID_ALLOCATION_SIZE));
+				}
+			}
+		}
+		return AudioSolutionsVersion.V10_1;
+	}
+	
+	/**
+	 * Migrates the DB from v10.1 to v10.2: 
+	 */
+	private static AudioSolutionsVersion migrateV10_1(Connection connection, File dataRootDirectory) throws Exception {
+		// ================================================================
+		// 1. create indexes for lookup columns
+		// ================================================================
+		// Note: HSQLDB creates an index for each foreign key (track.album_id, track.artist_id, track.genre_id), 
+		// they are only created here if the foreign key is missing
+		final List<DBTableIndex> indexes = List.of(
+				new DBTableIndex("IDX_album_name_medium", AudioTable.ALBUM.getName(), List.of("NAME", "MEDIUM_ID")),
+				new DBTableIndex("IDX_genre_name", AudioTable.GENRE.getName(), List.of("NAME")),
+				new DBTableIndex("IDX_track_album", AudioTable.TRACK.getName(), List.of("ALBUM_ID")),
+				new DBTableIndex("IDX_track_artist", AudioTable.TRACK.getName(), List.of("ARTIST_ID")),
+				new DBTableIndex("IDX_track_genre", AudioTable.TRACK.getName(), List.of("GENRE_ID")));
+		try (Statement stmt = connection.createStatement()) {
+			for (DBTableIndex index : indexes) {
+				if (!existsIndex(stmt, index.tableName(), index.columnNames().get(0))) {
+					logAndExecute(stmt, String.format("CREATE INDEX %s ON %s (%s)", index.name(), index.tableName(), String.join(", ", index.columnNames())));
+				}
+			}
+		}
+		return AudioSolutionsVersion.V10_2;
+	}
+	
 	@Getter
 	private static class AudioTables {
 		private final DBTable artistTable;
@@ -303,6 +359,28 @@ class AudioSolutionsMigration {
 		return constraints;
 	}
 	
+	private static long getMaxId(Statement stmt, String tableName) throws SQLException {
+		try (ResultSet rs = stmt.executeQuery(String.format("SELECT MAX(id) FROM %s", tableName))) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+	
+	private static record DBTableIndex(String name, String tableName, List<String> columnNames) {};
+	/**
+	 * Returns true if an index starts with the given column by using HSQLDB's system tables.
+	 */
+	private static boolean existsIndex(Statement stmt, String tableName, String firstColumnName) throws SQLException {
+		try (ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO where table_name = '%s' and column_name = '%s' and ordinal_position = 1", tableName, firstColumnName))) {
+			return rs.next();
+		}
+	}
+	
+	private static boolean existsSequence(Statement stmt, String sequenceName) throws SQLException {
+		try (ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM INFORMATION_SCHEMA.SEQUENCES where sequence_name = '%s'", sequenceName))) {
+			return rs.next();
+		}
+	}
+	
 	private static void logAndExecute(Statement stmt, String sqlCommand) throws SQLException {
 		logger.info(sqlCommand);
 		stmt.execute(sqlCommand);
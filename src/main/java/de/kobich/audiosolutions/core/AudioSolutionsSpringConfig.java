@@ -1,13 +1,25 @@
 package de.kobich.audiosolutions.core;
 
+import java.net.URI;
+import java.util.List;
+import java.util.OptionalLong;
 import java.util.Properties;
+import java.util.UUID;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
 import javax.sql.DataSource;
 
+import org.apache.log4j.Logger;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cache.spi.RegionFactory;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.dialect.HSQLDialect;
 import org.hibernate.jpa.HibernatePersistenceProvider;
 import org.hibernate.tool.schema.Action;
+import org.hsqldb.jdbc.JDBCDataSource;
 import org.hsqldb.jdbc.JDBCDriver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -26,10 +38,20 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import com.atomikos.jdbc.AtomikosNonXADataSourceBean;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 import de.kobich.SpringComponentScan;
 import de.kobich.audiosolutions.core.AudioSolutions.DBConnectionSetting;
+import de.kobich.audiosolutions.core.AudioSolutions.DBDataSourceMode;
+import de.kobich.audiosolutions.core.service.persist.domain.Album;
+import de.kobich.audiosolutions.core.service.persist.domain.Artist;
+import de.kobich.audiosolutions.core.service.persist.domain.Genre;
+import de.kobich.audiosolutions.core.service.persist.domain.Medium;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.SharedCacheMode;
 
 @Configuration
 @EnableTransactionManagement
@@ -37,22 +59,61 @@ import jakarta.persistence.EntityManagerFactory;
 @ComponentScan(basePackageClasses = SpringComponentScan.class)
 @Lazy
 public class AudioSolutionsSpringConfig {
+	private static final Logger logger = Logger.getLogger(AudioSolutionsSpringConfig.class);
+	private static final int BATCH_SIZE = 50;
+	private static final int MIN_POOL_SIZE = 5;
+	private static final int MAX_POOL_SIZE = 20;
+	private static final long ENTITY_CACHE_SIZE = 10000;
+	private static final long QUERY_CACHE_SIZE = 1000;
+	private static final List<Class<?>> CACHED_ENTITIES = List.of(Medium.class, Artist.class, Genre.class, Album.class);
 	@Autowired
 	private Environment env;
 	
 	@Bean
 	public DataSource dataSource() {
-		AtomikosNonXADataSourceBean dataSource = new AtomikosNonXADataSourceBean();
-		dataSource.setDriverClassName(JDBCDriver.class.getName());
-		DBConnectionSetting setting = AudioSolutions.getDbConnectionSetting();
-		dataSource.setUrl(setting.url());
-		dataSource.setUser(setting.user());
-		dataSource.setPassword(setting.password());
-		dataSource.setMinPoolSize(5);
-		dataSource.setMaxPoolSize(20);
-		dataSource.setUniqueResourceName("AudioSolutionsDB");
-		dataSource.setLocalTransactionMode(true);
-		return dataSource;
+		DBDataSourceMode mode = getDataSourceMode();
+		logger.info("DB data source: " + mode);
+		return createDataSource(mode, "AudioSolutionsDB", AudioSolutions.getDbConnectionSetting());
+	}
+	
+	/**
+	 * Creates the data source: only the JPA transaction manager is used, so the embedded database does not need JTA
+	 */
+	public static DataSource createDataSource(DBDataSourceMode mode, String name, DBConnectionSetting setting) {
+		switch (mode) {
+			case ATOMIKOS:
+				AtomikosNonXADataSourceBean atomikosDataSource = new AtomikosNonXADataSourceBean();
+				atomikosDataSource.setDriverClassName(JDBCDriver.class.getName());
+				atomikosDataSource.setUrl(setting.url());
+				atomikosDataSource.setUser(setting.user());
+				atomikosDataSource.setPassword(setting.password());
+				atomikosDataSource.setMinPoolSize(MIN_POOL_SIZE);
+				atomikosDataSource.setMaxPoolSize(MAX_POOL_SIZE);
+				atomikosDataSource.setUniqueResourceName(name);
+				atomikosDataSource.setLocalTransactionMode(true);
+				return atomikosDataSource;
+			case DIRECT:
+				JDBCDataSource directDataSource = new JDBCDataSource();
+				directDataSource.setUrl(setting.url());
+				directDataSource.setUser(setting.user());
+				directDataSource.setPassword(setting.password());
+				return directDataSource;
+			case POOLED:
+			default:
+				HikariConfig config = new HikariConfig();
+				config.setDriverClassName(JDBCDriver.class.getName());
+				config.setJdbcUrl(setting.url());
+				config.setUsername(setting.user());
+				config.setPassword(setting.password());
+				config.setMinimumIdle(MIN_POOL_SIZE);
+				config.setMaximumPoolSize(MAX_POOL_SIZE);
+				config.setPoolName(name);
+				return new HikariDataSource(config);
+		}
+	}
+	
+	private DBDataSourceMode getDataSourceMode() {
+		return env.getProperty(AudioSolutions.DB_DATASOURCE_PROP, DBDataSourceMode.class, DBDataSourceMode.POOLED);
 	}
 
 	@Bean
@@ -60,7 +121,12 @@ public class AudioSolutionsSpringConfig {
 		LocalContainerEntityManagerFactoryBean b = new LocalContainerEntityManagerFactoryBean();
 		b.setPersistenceUnitName("AudioSolutionsPersistenceUnit");
 		b.setPersistenceProviderClass(HibernatePersistenceProvider.class);
-		b.setJtaDataSource(dataSource());
+		if (DBDataSourceMode.ATOMIKOS.equals(getDataSourceMode())) {
+			b.setJtaDataSource(dataSource());
+		}
+		else {
+			b.setDataSource(dataSource());
+		}
 		b.setPackagesToScan(SpringComponentScan.class.getPackageName());
 		HibernateJpaVendorAdapter va = new HibernateJpaVendorAdapter();
 		va.setDatabase(Database.HSQL);
@@ -96,6 +162,45 @@ public class AudioSolutionsSpringConfig {
 //		return m;
 //	}
 	
+	@Bean
+	public CacheManager cacheManager() {
+		return createCacheManager("AudioSolutionsDB");
+	}
+	
+	/**
+	 * Creates the second-level cache: media, artists, genres and albums are loaded by every track but rarely changed
+	 */
+	public static CacheManager createCacheManager(String name) {
+		// own cache manager for each database
+		CachingProvider cachingProvider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+		CacheManager cacheManager = cachingProvider.getCacheManager(URI.create(name + "-" + UUID.randomUUID()), AudioSolutionsSpringConfig.class.getClassLoader());
+		for (Class<?> entityClass : CACHED_ENTITIES) {
+			cacheManager.createCache(entityClass.getName(), createCacheConfiguration(OptionalLong.of(ENTITY_CACHE_SIZE)));
+		}
+		cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, createCacheConfiguration(OptionalLong.of(QUERY_CACHE_SIZE)));
+		// must not be evicted: contains the last modification of each table (to invalidate query results)
+		cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, createCacheConfiguration(OptionalLong.empty()));
+		return cacheManager;
+	}
+	
+	private static CaffeineConfiguration<Object, Object> createCacheConfiguration(OptionalLong maximumSize) {
+		CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+		configuration.setMaximumSize(maximumSize);
+		return configuration;
+	}
+	
+	/**
+	 * Enables the second-level cache and the query cache
+	 */
+	public static void putCacheProperties(Properties hibernateProperties, CacheManager cacheManager) {
+		hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+		hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+		hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+		hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+		hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.CREATE_WARN.getExternalRepresentation());
+		hibernateProperties.put(AvailableSettings.JAKARTA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+	}
+	
 	@Bean
 	public PersistenceExceptionTranslationPostProcessor exceptionTranslation(){
 		return new PersistenceExceptionTranslationPostProcessor();
@@ -108,6 +213,15 @@ public class AudioSolutionsSpringConfig {
         hibernateProperties.put(AvailableSettings.USE_SQL_COMMENTS, false);
         hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
        	hibernateProperties.put(AvailableSettings.DIALECT, HSQLDialect.class.getName());
+        // JDBC batching: requires sequence-based IDs (see allocationSize of the entities)
+        hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, BATCH_SIZE);
+        hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+        hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+        hibernateProperties.put(AvailableSettings.BATCH_VERSIONED_DATA, true);
+        // second-level cache
+        if (env.getProperty(AudioSolutions.DB_CACHE_PROP, Boolean.class, true)) {
+        	putCacheProperties(hibernateProperties, cacheManager());
+        }
         	
         if (!env.getRequiredProperty(AudioSolutions.DB_EXISTS_PROP, Boolean.class)) {
         	hibernateProperties.put(AvailableSettings.HBM2DDL_AUTO, Action.CREATE.getExternalHbm2ddlName());
@@ -11,7 +11,9 @@ import lombok.RequiredArgsConstructor;
 public enum AudioSolutionsVersion {
 	V8_0("8.0.0.0"),
 	V9_0("9.0.0.0"),
-	V10_0("10.0.0.0");
+	V10_0("10.0.0.0"),
+	V10_1("10.1.0.0"),
+	V10_2("10.2.0.0");
 	
 	private final String label;
 	
@@ -7,6 +7,7 @@ import java.util.UUID;
 import org.springframework.lang.Nullable;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackView;
 import de.kobich.audiosolutions.core.service.search.AudioSearchService;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
@@ -50,6 +51,18 @@ public final class AlbumIdentity implements Serializable {
 		throw new IllegalStateException("Album is not persistent: " + album.getName());
 	}
 	
+	/**
+	 * Returns {@link AlbumIdentity} for already persisted tracks in order to keep the current album assignment
+	 * @param track
+	 * @return
+	 */
+	public static AlbumIdentity create(TrackView track) {
+		if (track.albumId() != null) {
+			return new AlbumIdentity(track.albumId(), null);
+		}
+		throw new IllegalStateException("Album is not persistent: " + track.albumName());
+	}
+	
 	/**
 	 * Returns a new {@link AlbumIdentity}
 	 */
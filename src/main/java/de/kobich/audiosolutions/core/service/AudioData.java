@@ -16,6 +16,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackView;
 import de.kobich.commons.utils.CloneUtils;
 import de.kobich.component.file.IMetaData;
 import lombok.AccessLevel;
@@ -55,37 +56,40 @@ public class AudioData implements IMetaData {
 		this.state = AudioState.TRANSIENT_INCOMPLETE;
 	}
 	public AudioData(Track track) {
+		this(TrackView.of(track));
+	}
+	public AudioData(TrackView track) {
 		this();
 		// album
-		this.setAttribute(AudioAttribute.ALBUM, track.getAlbum().getName());
-		this.setAlbumDescription(track.getAlbum().getDescription());
-		if (track.getAlbum().getPublication() != null) {
-			String dateText = AudioAttributeUtils.convert2String(track.getAlbum().getPublication());
+		this.setAttribute(AudioAttribute.ALBUM, track.albumName());
+		this.setAlbumDescription(track.albumDescription());
+		if (track.albumPublication() != null) {
+			String dateText = AudioAttributeUtils.convert2String(track.albumPublication());
 			this.setAttribute(AudioAttribute.ALBUM_PUBLICATION, dateText);
 		}
-		this.setAlbumIdentity(AlbumIdentity.create(track.getAlbum()));
+		this.setAlbumIdentity(AlbumIdentity.create(track));
 		// artist
-		this.setAttribute(AudioAttribute.ARTIST, track.getArtist().getName());
-		this.setArtistDescription(track.getArtist().getDescription());
+		this.setAttribute(AudioAttribute.ARTIST, track.artistName());
+		this.setArtistDescription(track.artistDescription());
 		// genre
-		this.setAttribute(AudioAttribute.GENRE, track.getGenre().getName());
+		this.setAttribute(AudioAttribute.GENRE, track.genreName());
 		// medium
-		this.setAttribute(AudioAttribute.MEDIUM, track.getAlbum().getMedium().getName());
+		this.setAttribute(AudioAttribute.MEDIUM, track.mediumName());
 		// track
-		this.setTrackId(track.getId());
-		if (StringUtils.isNotBlank(track.getDiskName())) {
-			this.setAttribute(AudioAttribute.DISK, track.getDiskName());
+		this.setTrackId(track.id());
+		if (StringUtils.isNotBlank(track.diskName())) {
+			this.setAttribute(AudioAttribute.DISK, track.diskName());
 		}
-		if (track.getRating() != null) {
-			String value = AudioAttributeUtils.convert2String(track.getRating());
+		if (track.rating() != null) {
+			String value = AudioAttributeUtils.convert2String(track.rating());
 			this.setAttribute(AudioAttribute.RATING, value);
 		}
-		this.setTrack(track.getName());
-		this.setTrackDescription(track.getDescription());
-		if (StringUtils.isNotBlank(track.getFormat())) {
-			this.setAttribute(AudioAttribute.TRACK_FORMAT, track.getFormat());
+		this.setTrack(track.name());
+		this.setTrackDescription(track.description());
+		if (StringUtils.isNotBlank(track.format())) {
+			this.setAttribute(AudioAttribute.TRACK_FORMAT, track.format());
 		}
-		String trackNo = AudioAttributeUtils.convert2String(track.getNo());
+		String trackNo = AudioAttributeUtils.convert2String(track.no());
 		this.setAttribute(AudioAttribute.TRACK_NO, trackNo);
 		setState(calculateState());	
 	}
@@ -381,6 +385,24 @@ public class AudioData implements IMetaData {
 		setState(newState);
 	}
 	
+	/**
+	 * Returns the fields changed by persisting: the track id, the state and the album identity
+	 */
+	public PersistenceState getPersistenceState() {
+		return new PersistenceState(trackId, state, albumIdentity);
+	}
+	
+	/**
+	 * Restores the fields changed by persisting, e.g. if persisting failed
+	 */
+	public void restorePersistenceState(PersistenceState persistenceState) {
+		setTrackId(persistenceState.trackId());
+		setState(persistenceState.state());
+		setAlbumIdentity(persistenceState.albumIdentity());
+	}
+	
+	public static record PersistenceState(@Nullable Long trackId, AudioState state, @Nullable AlbumIdentity albumIdentity) {}
+	
 	public void removeAll() {
 		for (AudioAttribute attribute : AudioAttribute.values()) {
 			this.removeAttribute(attribute);
@@ -10,7 +10,7 @@ public class AudioException extends ApplicationException {
 	public static final ErrorCode COMMAND_IO_ERROR = new ErrorCode("audio.commandIOError", "I/O error: \nMake sure '{0}' is installed and on your PATH");
 	public static final ErrorCode COMMAND_DEFINITION_NOT_FOUND_ERROR = new ErrorCode("audio.commandDefinitionNotFoundError", "No suitable command definition found");
 	public static final ErrorCode ILLEGAL_STATE_ERROR = new ErrorCode("audio.illegalStateError", "Illegal state error"); 
-	public static final ErrorCode DUPLICATE_FILE_ERROR = new ErrorCode("audio.duplicateFileError", "File already available in the database");
+	public static final ErrorCode DUPLICATE_FILE_ERROR = new ErrorCode("audio.duplicateFileError", "File already available in the database: {0}");
 	public static final ErrorCode FILE_ALREADY_EXISTS = new ErrorCode("audio.renameAlreadyExists", "Destination file already exists");
 	public static final ErrorCode FILE_MISSING = new ErrorCode("audio.missingFile", "The file does not exist");
 	public static final ErrorCode ENCODER_NOT_FOUND_ERROR = new ErrorCode("audio.noEncoderFoundError", "No suitable encoder found");
@@ -26,7 +26,9 @@ public class AudioException extends ApplicationException {
 	public static final ErrorCode CONNECTION_ERROR = new ErrorCode("audio.connectionError", "Internet connection cannot be established");
 	public static final ErrorCode CHECKER_NOT_FOUND_ERROR = new ErrorCode("audio.checkerNotFoundError", "No suitable audio checker found");
 	public static final ErrorCode DB_MIGRATION_ERROR = new ErrorCode("audio.databaseMigrationError", "Database migration failed");
+	public static final ErrorCode DB_BACKUP_ERROR = new ErrorCode("audio.databaseBackupError", "Database backup failed");
 	public static final ErrorCode PLAYLIST_NOT_FOUND_ERROR = new ErrorCode("audio.playlistNotFoundError", "Playlist cannot be found: {0}");
+	public static final ErrorCode SEARCH_CANCELLED = new ErrorCode("audio.searchCancelled", "The search was superseded by a newer search");
 
 	private static final long serialVersionUID = -5238782004634985009L;
 
@@ -0,0 +1,239 @@
+package de.kobich.audiosolutions.core.service.backup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.log4j.Logger;
+import org.hsqldb.lib.tar.TarMalformatException;
+import org.hsqldb.lib.tar.TarReader;
+
+import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
+import de.kobich.commons.monitor.progress.ProgressSupport;
+
+/**
+ * Online backups of the HSQLDB database as compressed tar files.
+ * This class does not use Spring because backups are also created before migrations. Thus, plain JDBC is used here.
+ * The version of the application is stored in the database with each backup, so a restored database can be migrated from its own version.
+ * @see https://hsqldb.org/doc/guide/management-chapt.html#mtc_backup
+ */
+public class DatabaseBackup {
+	private static final Logger logger = Logger.getLogger(DatabaseBackup.class);
+	private static final String BACKUP_PREFIX = "audiodb_";
+	private static final String BACKUP_SUFFIX = ".tar.gz";
+	private static final String OLD_DB_DIR_INFIX = "_replaced_";
+	private static final String VERSION_TABLE = "audiosolutions_version";
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+	private final File backupDir;
+	private final int retentionCount;
+	private final String version;
+
+	/**
+	 * Database files extracted from a backup
+	 * @param dir the directory containing the database files
+	 * @param version the version of the application which created the backup
+	 */
+	private static record ExtractedBackup(File dir, String version) {}
+
+	/**
+	 * @param backupDir the directory of the backup files
+	 * @param retentionCount number of backups to keep
+	 * @param version the version of the database to be backed up
+	 */
+	public DatabaseBackup(File backupDir, int retentionCount, String version) {
+		if (retentionCount < 1) {
+			throw new IllegalArgumentException("At least one backup must be kept: " + retentionCount);
+		}
+		this.backupDir = backupDir;
+		this.retentionCount = retentionCount;
+		this.version = version;
+	}
+
+	/**
+	 * Creates a backup while the database is in use and deletes backups exceeding the retention count
+	 * @param connection connection to the database
+	 * @param monitor
+	 * @return the backup file
+	 */
+	public File backup(Connection connection, IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		backupDir.mkdirs();
+		File backupFile = new File(backupDir, BACKUP_PREFIX + LocalDateTime.now().format(TIMESTAMP_FORMAT) + BACKUP_SUFFIX);
+		progressSupport.monitorSubTask("Creating backup: " + backupFile.getName(), 1);
+		StopWatch stopWatch = StopWatch.createStarted();
+		try (Statement stmt = connection.createStatement()) {
+			writeVersion(connection, stmt);
+			// the log is written with a delay and the data file is only copied up to the last checkpoint: 
+			// a short checkpoint ensures that all committed transactions are contained
+			stmt.execute("CHECKPOINT");
+			stmt.execute(String.format("BACKUP DATABASE TO '%s' NOT BLOCKING COMPRESSED", FilenameUtils.separatorsToUnix(backupFile.getAbsolutePath())));
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.DB_BACKUP_ERROR, exc);
+		}
+		long millis = Math.max(1, stopWatch.getTime(TimeUnit.MILLISECONDS));
+		double megaBytes = backupFile.length() / (1024.0 * 1024.0);
+		String message = String.format("Backup created: %.1f MB in %dms (%.1f MB/s)", megaBytes, millis, megaBytes * 1000 / millis);
+		logger.info(message + ": " + backupFile.getAbsolutePath());
+		progressSupport.monitorSubTask(message, 1);
+
+		applyRetentionPolicy();
+		return backupFile;
+	}
+
+	private void writeVersion(Connection connection, Statement stmt) throws SQLException {
+		stmt.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (version VARCHAR(32) NOT NULL)");
+		stmt.execute("DELETE FROM " + VERSION_TABLE);
+		try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + VERSION_TABLE + " (version) VALUES (?)")) {
+			insert.setString(1, version);
+			insert.executeUpdate();
+		}
+		if (!connection.getAutoCommit()) {
+			connection.commit();
+		}
+	}
+
+	/**
+	 * Returns all backup files (newest first)
+	 */
+	public List<File> getBackupFiles() {
+		File[] files = backupDir.listFiles(f -> f.isFile() && f.getName().startsWith(BACKUP_PREFIX) && f.getName().endsWith(BACKUP_SUFFIX));
+		if (files == null) {
+			return List.of();
+		}
+		// the timestamp of the name is sortable
+		return Arrays.stream(files).sorted(Comparator.comparing(File::getName).reversed()).toList();
+	}
+
+	/**
+	 * Deletes the oldest backups exceeding the retention count
+	 */
+	public void applyRetentionPolicy() {
+		List<File> backupFiles = getBackupFiles();
+		for (File backupFile : backupFiles.subList(Math.min(retentionCount, backupFiles.size()), backupFiles.size())) {
+			logger.info("Deleting old backup: " + backupFile.getAbsolutePath());
+			FileUtils.deleteQuietly(backupFile);
+		}
+	}
+
+	/**
+	 * Verifies that the backup can be extracted and opened as database
+	 * @param backupFile
+	 * @param monitor
+	 */
+	public void verify(File backupFile, IServiceProgressMonitor monitor) throws AudioException {
+		File verifyDir = null;
+		try {
+			verifyDir = extract(backupFile, monitor).dir();
+		}
+		finally {
+			FileUtils.deleteQuietly(verifyDir);
+		}
+	}
+
+	/**
+	 * Replaces the database by the backup after verifying it. The database must not be used at the same time.
+	 * The old database directory is renamed and only deleted after the restored one is in place: if moving fails, it is renamed back.
+	 * @param backupFile
+	 * @param dbDir database directory
+	 * @param connection connection to the database which is shut down before restoring
+	 * @param monitor
+	 * @return the version of the restored database
+	 */
+	public String restore(File backupFile, File dbDir, Connection connection, IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		ExtractedBackup extractedBackup = extract(backupFile, monitor);
+		File restoreDir = extractedBackup.dir();
+		try {
+			progressSupport.monitorSubTask("Restoring backup: " + backupFile.getName(), 1);
+			try (Statement stmt = connection.createStatement()) {
+				stmt.execute("SHUTDOWN");
+			}
+			File oldDbDir = new File(dbDir.getParentFile(), dbDir.getName() + OLD_DB_DIR_INFIX + LocalDateTime.now().format(TIMESTAMP_FORMAT));
+			if (dbDir.exists()) {
+				Files.move(dbDir.toPath(), oldDbDir.toPath());
+			}
+			try {
+				FileUtils.moveDirectory(restoreDir, dbDir);
+			}
+			catch (IOException exc) {
+				FileUtils.deleteQuietly(dbDir);
+				if (oldDbDir.exists()) {
+					Files.move(oldDbDir.toPath(), dbDir.toPath());
+				}
+				throw exc;
+			}
+			FileUtils.deleteQuietly(oldDbDir);
+			logger.info("Backup of version " + extractedBackup.version() + " restored: " + backupFile.getAbsolutePath());
+			return extractedBackup.version();
+		}
+		catch (SQLException | IOException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.DB_BACKUP_ERROR, exc);
+		}
+		finally {
+			FileUtils.deleteQuietly(restoreDir);
+		}
+	}
+
+	/**
+	 * Extracts the backup to a new directory and checks that the database can be opened
+	 */
+	private ExtractedBackup extract(File backupFile, IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorSubTask("Verifying backup: " + backupFile.getName(), 1);
+		File extractDir = null;
+		try {
+			// same file system as the backups: allows moving the directory
+			backupDir.mkdirs();
+			extractDir = Files.createTempDirectory(backupDir.toPath(), "extract_").toFile();
+			new TarReader(backupFile, TarReader.EXTRACT_MODE, null, null, extractDir).read();
+
+			File[] propertiesFiles = extractDir.listFiles(f -> f.getName().endsWith(".properties"));
+			if (propertiesFiles == null || propertiesFiles.length != 1) {
+				throw new IOException("Backup does not contain one database: " + backupFile.getAbsolutePath());
+			}
+			String dbName = FilenameUtils.getBaseName(propertiesFiles[0].getName());
+			String url = String.format("jdbc:hsqldb:file:%s/%s;ifexists=true;shutdown=true", FilenameUtils.separatorsToUnix(extractDir.getAbsolutePath()), dbName);
+			String backupVersion;
+			try (Connection connection = DriverManager.getConnection(url, "sa", "");
+					Statement stmt = connection.createStatement()) {
+				try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC'")) {
+					if (!rs.next() || rs.getInt(1) == 0) {
+						throw new IOException("Backup does not contain any table: " + backupFile.getAbsolutePath());
+					}
+				}
+				try (ResultSet rs = stmt.executeQuery("SELECT version FROM " + VERSION_TABLE)) {
+					if (!rs.next()) {
+						throw new IOException("Backup does not contain the database version: " + backupFile.getAbsolutePath());
+					}
+					backupVersion = rs.getString(1);
+				}
+			}
+			logger.info("Backup verified: " + backupFile.getAbsolutePath());
+			return new ExtractedBackup(extractDir, backupVersion);
+		}
+		catch (IOException | TarMalformatException | SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			FileUtils.deleteQuietly(extractDir);
+			throw new AudioException(AudioException.DB_BACKUP_ERROR, exc);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package de.kobich.audiosolutions.core.service.backup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import de.kobich.audiosolutions.core.AudioSolutions;
+import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
+import de.kobich.commons.monitor.progress.ProgressSupport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Creates backups of the database while it is in use.
+ * @see DatabaseBackup
+ */
+@Service
+public class DatabaseBackupService {
+	private static final Logger logger = Logger.getLogger(DatabaseBackupService.class);
+	@Autowired
+	private DataSource dataSource;
+	private ScheduledExecutorService backupExecutor;
+
+	@PostConstruct
+	public void init() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("audio-backup-");
+		threadFactory.setDaemon(true);
+		this.backupExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		// running backups are finished, scheduled backups are cancelled
+		backupExecutor.shutdown();
+	}
+
+	/**
+	 * Creates a backup without blocking the database
+	 * @param monitor
+	 * @return the backup file
+	 */
+	public File backup(IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Creating backup...");
+		try (Connection connection = dataSource.getConnection()) {
+			File backupFile = AudioSolutions.getDatabaseBackup().backup(connection, monitor);
+			progressSupport.monitorEndTask("Backup created");
+			return backupFile;
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.DB_BACKUP_ERROR, exc);
+		}
+	}
+
+	/**
+	 * Verifies that the backup can be restored
+	 * @param backupFile
+	 * @param monitor
+	 */
+	public void verify(File backupFile, IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Verifying backup...");
+		AudioSolutions.getDatabaseBackup().verify(backupFile, monitor);
+		progressSupport.monitorEndTask("Backup verified");
+	}
+
+	/**
+	 * Returns all backup files (newest first)
+	 */
+	public List<File> getBackupFiles() {
+		return AudioSolutions.getDatabaseBackup().getBackupFiles();
+	}
+
+	/**
+	 * Creates backups periodically until the returned future is cancelled
+	 * @param interval
+	 * @param monitor
+	 * @return
+	 */
+	public ScheduledFuture<?> scheduleBackups(Duration interval, IServiceProgressMonitor monitor) {
+		return backupExecutor.scheduleWithFixedDelay(() -> {
+			try {
+				backup(monitor);
+			}
+			catch (AudioException exc) {
+				// already logged: next backup is tried anyway
+			}
+		}, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+}
@@ -1,22 +1,102 @@
 package de.kobich.audiosolutions.core.service.descriptor;
 
 import java.io.File;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 import org.apache.commons.io.filefilter.AbstractFileFilter;
 
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
 import de.kobich.audiosolutions.core.service.persist.AudioPersistenceService;
 
+/**
+ * Accepts files below the start directory which are persisted.
+ * By default, the paths of all persisted files below the start directory are loaded into a hash set by the first call.
+ * Optionally, a compact Bloom filter of all persisted paths is kept instead: it rejects unknown files and 
+ * only the directories of possibly persisted files are loaded lazily. Only the recently used directories are cached:
+ * this bounds the memory for huge libraries because scans visit one directory after another.
+ */
 public class PersistedFileFilter extends AbstractFileFilter {
-	private final List<String> fileNames;
+	public static final double BLOOM_FILTER_FPP = 0.01;
+	private static final int DIRECTORY_CACHE_SIZE = 100;
+	private final File startDirectory;
+	private final String startPath;
+	private final AudioPersistenceService persistenceService;
+	@Nullable
+	private final BloomFilter<CharSequence> bloomFilter;
+	// all paths (without Bloom filter)
+	private volatile Set<String> paths;
+	// paths of the recently used directories (with Bloom filter)
+	private final Map<String, Set<String>> directoryCache;
 
 	public PersistedFileFilter(File startDirectory, AudioPersistenceService persistenceService) {
-		fileNames = persistenceService.getFilenames(startDirectory);
+		this(startDirectory, persistenceService, false);
+	}
+
+	/**
+	 * @param startDirectory
+	 * @param persistenceService
+	 * @param useBloomFilter if a Bloom filter is created (useful if many files are not persisted)
+	 */
+	public PersistedFileFilter(File startDirectory, AudioPersistenceService persistenceService, boolean useBloomFilter) {
+		this.startDirectory = startDirectory;
+		this.startPath = AudioPersistenceService.getDirectoryPath(startDirectory);
+		this.persistenceService = persistenceService;
+		this.bloomFilter = useBloomFilter ? createBloomFilter() : null;
+		this.directoryCache = new LinkedHashMap<>(DIRECTORY_CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+				return size() > DIRECTORY_CACHE_SIZE;
+			}
+		};
 	}
 
 	@Override
 	public boolean accept(File pathname) {
-		return fileNames.contains(pathname.getAbsolutePath());
+		String path = pathname.getAbsolutePath();
+		if (!path.startsWith(startPath)) {
+			return false;
+		}
+		if (bloomFilter == null) {
+			return getPaths().contains(path);
+		}
+		if (!bloomFilter.mightContain(path)) {
+			return false;
+		}
+		return getDirectoryPaths(pathname.getAbsoluteFile().getParent()).contains(path);
+	}
+
+	private synchronized Set<String> getDirectoryPaths(String directory) {
+		return directoryCache.computeIfAbsent(directory, dir -> new HashSet<>(persistenceService.getFilenamesInDirectory(new File(dir))));
+	}
+
+	private Set<String> getPaths() {
+		if (paths == null) {
+			synchronized (this) {
+				if (paths == null) {
+					Set<String> allPaths = new HashSet<>();
+					persistenceService.getFilenames(startDirectory, allPaths::add);
+					paths = allPaths;
+				}
+			}
+		}
+		return paths;
+	}
+
+	private BloomFilter<CharSequence> createBloomFilter() {
+		long count = persistenceService.getFilenameCount(startDirectory);
+		BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1, count), BLOOM_FILTER_FPP);
+		persistenceService.getFilenames(startDirectory, filter::put);
+		return filter;
 	}
 
 }
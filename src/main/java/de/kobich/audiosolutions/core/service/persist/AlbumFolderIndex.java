@@ -0,0 +1,95 @@
+package de.kobich.audiosolutions.core.service.persist;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import de.kobich.audiosolutions.core.service.persist.domain.Album;
+import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+
+/**
+ * In-memory index of the albums by the folders of their tracks. 
+ * It contains only the folders of the files to be persisted and is kept up to date while tracks are saved or removed.
+ */
+class AlbumFolderIndex {
+	// folder -> file path -> album
+	private final NavigableMap<String, Map<String, Album>> folders = new TreeMap<>();
+	
+	/**
+	 * Returns the folder of a file path including the trailing separator: /media/Artist/Album/01-Track.mp3 -> /media/Artist/Album/
+	 */
+	public static String getFolder(String filePath) {
+		return FilenameUtils.getFullPath(filePath);
+	}
+	
+	/**
+	 * Returns the part of the folder which must be loaded to find all tracks of the same album, i.e. the part before the disk (if any)
+	 */
+	public static String getRootFolder(String folder, @Nullable String disk) {
+		if (disk != null && !disk.isEmpty() && folder.contains(disk)) {
+			return folder.substring(0, folder.indexOf(disk));
+		}
+		return folder;
+	}
+	
+	public void put(String filePath, Album album) {
+		folders.computeIfAbsent(getFolder(filePath), f -> new HashMap<>()).put(filePath, album);
+	}
+	
+	public void remove(String filePath) {
+		Map<String, Album> tracks = folders.get(getFolder(filePath));
+		if (tracks != null) {
+			tracks.remove(filePath);
+		}
+	}
+	
+	/**
+	 * Returns an album with the given name and medium having a track in the given folder. 
+	 * If a disk is given, the disk within the folder is a wildcard, i.e. /Album/Disk 2/ finds the album of /Album/Disk 1/.
+	 */
+	public Optional<Album> find(String folder, @Nullable String disk, String albumName, Medium medium) {
+		String rootFolder = getRootFolder(folder, disk);
+		if (rootFolder.equals(folder)) {
+			return findAlbum(folders.get(folder), albumName, medium);
+		}
+		
+		// disk is replaced by a wildcard, the folder count must be the same
+		Pattern pattern = Pattern.compile(Arrays.stream(folder.split(Pattern.quote(disk), -1)).map(Pattern::quote).collect(Collectors.joining(".*")));
+		int depth = getDepth(folder);
+		for (Map.Entry<String, Map<String, Album>> entry : folders.subMap(rootFolder, true, rootFolder + Character.MAX_VALUE, false).entrySet()) {
+			if (getDepth(entry.getKey()) == depth && pattern.matcher(entry.getKey()).matches()) {
+				Optional<Album> album = findAlbum(entry.getValue(), albumName, medium);
+				if (album.isPresent()) {
+					return album;
+				}
+			}
+		}
+		return Optional.empty();
+	}
+	
+	private static Optional<Album> findAlbum(@Nullable Map<String, Album> tracks, String albumName, Medium medium) {
+		if (tracks == null) {
+			return Optional.empty();
+		}
+		// HSQLDB compares strings with PAD SPACE
+		String name = StringUtils.stripEnd(albumName, " ");
+		return tracks.values().stream()
+				.filter(a -> name.equals(StringUtils.stripEnd(a.getName(), " ")) && Objects.equals(medium.getId(), a.getMedium().getId()))
+				.findFirst();
+	}
+	
+	private static int getDepth(String folder) {
+		return StringUtils.countMatches(folder, '/') + StringUtils.countMatches(folder, '\\');
+	}
+}
@@ -1,26 +1,36 @@
 package de.kobich.audiosolutions.core.service.persist;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.annotation.Nullable;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import de.kobich.audiosolutions.core.service.AlbumIdentity;
 import de.kobich.audiosolutions.core.service.AudioData;
 import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.audiosolutions.core.service.AudioState;
 import de.kobich.audiosolutions.core.service.RatingType;
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
@@ -32,8 +42,8 @@ import de.kobich.audiosolutions.core.service.persist.repository.ArtistRepository
 import de.kobich.audiosolutions.core.service.persist.repository.GenreRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.MediumRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.TrackRepository;
+import de.kobich.audiosolutions.core.service.persist.repository.TrackRepository.TrackReferences;
 import de.kobich.commons.utils.CompareUtils;
-import de.kobich.commons.utils.FilenameUtils;
 import de.kobich.commons.utils.SQLUtils;
 import de.kobich.component.file.FileDescriptor;
 import lombok.EqualsAndHashCode;
@@ -42,40 +52,140 @@ import lombok.RequiredArgsConstructor;
 @Service
 public class AudioEntityCache {
 	private static final Logger logger = Logger.getLogger(AudioEntityCache.class);
+	static final int IN_CLAUSE_SIZE = 500;
 	private final LoadingCache<String, Medium> mediumCache;
 	private final LoadingCache<String, Artist> artistCache;
 	private final LoadingCache<String, Genre> genreCache;
 	private final LoadingCache<AlbumKey, Album> albumCache;
+	private final AlbumFolderIndex albumFolderIndex;
 	private final TrackRepository trackRepository;
+	// dimension rows which lost a reference during this run and may be orphaned now
+	private final Set<Long> orphanCandidateMediumIds = new HashSet<>();
+	private final Set<Long> orphanCandidateArtistIds = new HashSet<>();
+	private final Set<Long> orphanCandidateGenreIds = new HashSet<>();
+	private final Set<Long> orphanCandidateAlbumIds = new HashSet<>();
+	// persisted tracks of the current partition (managed by its transaction)
+	private final Map<Long, Track> prefetchedTracks = new HashMap<>();
+	
+	/**
+	 * Values of a file to be saved which are read from its audio data in advance (e.g. by a worker thread)
+	 */
+	public static record TrackValues(@Nullable Long trackId, String filePath, String filePathOnMedium, File parentFolder, String folder, 
+			String medium, String artist, String genre, String album, @Nullable Date albumPublication, @Nullable AlbumIdentity albumIdentifier, 
+			String track, @Nullable String disk, @Nullable String format, @Nullable Integer trackNo, @Nullable RatingType rating) {
+		
+		public static TrackValues of(FileDescriptor fileDescriptor, AudioData audioData) {
+			File file = fileDescriptor.getFile();
+			String filePath = file.getAbsolutePath();
+			return new TrackValues(audioData.getTrackId(), filePath, fileDescriptor.getRelativePath(), file.getParentFile(), AlbumFolderIndex.getFolder(filePath), 
+					audioData.getMedium().orElse(AudioData.DEFAULT_VALUE), audioData.getArtist().orElse(AudioData.DEFAULT_VALUE), 
+					audioData.getGenre().orElse(AudioData.DEFAULT_VALUE), audioData.getAlbum().orElse(AudioData.DEFAULT_VALUE), 
+					audioData.getAlbumPublication().orElse(null), audioData.getAlbumIdentifier().orElse(null), audioData.getTrack().orElseThrow(), 
+					audioData.getDisk().orElse(null), audioData.getTrackFormat().orElse(null), audioData.getTrackNo().orElse(null), audioData.getRating().orElse(null));
+		}
+	}
 	
 	public AudioEntityCache(MediumRepository mediumRepository, ArtistRepository artistRepository, GenreRepository genreRepository, AlbumRepository albumRepository, TrackRepository trackRepository) {
 		this.mediumCache = CacheBuilder.newBuilder().build(new MediumCacheLoader(mediumRepository));
 		this.artistCache = CacheBuilder.newBuilder().build(new ArtistCacheLoader(artistRepository));
 		this.genreCache = CacheBuilder.newBuilder().build(new GenreCacheLoader(genreRepository));
-		this.albumCache = CacheBuilder.newBuilder().build(new AlbumCacheLoader(albumRepository, trackRepository));
+		this.albumFolderIndex = new AlbumFolderIndex();
+		this.albumCache = CacheBuilder.newBuilder().build(new AlbumCacheLoader(albumRepository, albumFolderIndex));
 		this.trackRepository = trackRepository;
 	}
 	
 	/**
-	 * Checks all preconditions, e.g. there is no track in the DB with the same file path
+	 * Checks all preconditions of the files to be saved (transient or modified) at once, e.g. there is no track in the DB with the same file path
+	 */
+	public void checkPreconditions(Collection<TrackValues> trackValues) throws AudioException {
+		Set<String> filePaths = new HashSet<>();
+		Set<String> duplicateFilePaths = new TreeSet<>();
+		for (TrackValues values : trackValues) {
+			// track is transient
+			if (values.trackId() == null) {
+				String filePath = values.filePath();
+				if (!filePaths.add(filePath)) {
+					duplicateFilePaths.add(filePath);
+				}
+			}
+		}
+		for (List<String> chunk : Lists.partition(new ArrayList<>(filePaths), IN_CLAUSE_SIZE)) {
+			duplicateFilePaths.addAll(trackRepository.findFilePathsIn(chunk));
+		}
+		if (!duplicateFilePaths.isEmpty()) {
+			// avoid unique constraint exception
+			duplicateFilePaths.forEach(p -> logger.warn("File already available in the database: " + p));
+			throw new AudioException(AudioException.DUPLICATE_FILE_ERROR, String.join(", ", duplicateFilePaths));
+		}
+	}
+	
+	/**
+	 * Loads the albums of all tracks in the folders of the given files into the folder index, 
+	 * so that finding a suitable album for a new album key does not require a query.
 	 */
-	public void checkPreconditions(FileDescriptor fileDescriptor, AudioData audioData) throws AudioException {
-		// track is transient
-		if (audioData.getTrackId() == null) {
-			String filePath = fileDescriptor.getFile().getAbsolutePath();
-			if (trackRepository.findFirstByFilePath(filePath).isPresent()) {
-				// avoid unique constraint exception
-				throw new AudioException(AudioException.DUPLICATE_FILE_ERROR);
+	public void loadAlbumFolderIndex(Collection<FileDescriptor> fileDescriptors) {
+		// first import: no query required
+		if (trackRepository.count() == 0) {
+			return;
+		}
+		Set<String> rootFolders = new TreeSet<>();
+		for (FileDescriptor fileDescriptor : fileDescriptors) {
+			AudioData audioData = fileDescriptor.getMetaData(AudioData.class);
+			if (audioData == null) {
+				continue;
 			}
+			AudioState state = audioData.getState();
+			if (state.isTransient() || state.isPersistentModified()) {
+				String folder = AlbumFolderIndex.getFolder(fileDescriptor.getFile().getAbsolutePath());
+				rootFolders.add(AlbumFolderIndex.getRootFolder(folder, audioData.getDisk().orElse(null)));
+			}
+		}
+		String lastRootFolder = null;
+		for (String rootFolder : rootFolders) {
+			// sub folders are already loaded by its parent folder
+			if (lastRootFolder != null && rootFolder.startsWith(lastRootFolder)) {
+				continue;
+			}
+			lastRootFolder = rootFolder;
+			String filePathWithWildcards = SQLUtils.escapeSQLWildcards(rootFolder) + "%";
+			trackRepository.findTrackAlbumsByFilePath(filePathWithWildcards, SQLUtils.LIKE_ESCAPE_CHAR).forEach(t -> albumFolderIndex.put(t.getFilePath(), t.getAlbum()));
+		}
+	}
+	
+	/**
+	 * Loads the media, artists and genres of all files to be saved (transient or modified) with one query per table and creates the missing ones. 
+	 * Afterwards, getOrCreateMedium(), getOrCreateArtist() and getOrCreateGenre() are served by the cache.
+	 * The persisted tracks of modified files are loaded by chunked queries for getOrCreateTrack().
+	 */
+	public void prefetch(Collection<TrackValues> trackValues) throws ExecutionException {
+		Set<String> mediumNames = new HashSet<>();
+		Set<String> artistNames = new HashSet<>();
+		Set<String> genreNames = new HashSet<>();
+		List<Long> trackIds = new ArrayList<>();
+		for (TrackValues values : trackValues) {
+			mediumNames.add(values.medium());
+			artistNames.add(values.artist());
+			genreNames.add(values.genre());
+			if (values.trackId() != null) {
+				trackIds.add(values.trackId());
+			}
+		}
+		// only missing keys are passed to CacheLoader.loadAll()
+		this.mediumCache.getAll(mediumNames);
+		this.artistCache.getAll(artistNames);
+		this.genreCache.getAll(genreNames);
+		// tracks of previous partitions are detached
+		this.prefetchedTracks.clear();
+		for (List<Long> chunk : Lists.partition(trackIds, IN_CLAUSE_SIZE)) {
+			trackRepository.findAllByIdIn(chunk).forEach(track -> prefetchedTracks.put(track.getId(), track));
 		}
 	}
 	
 	/**
 	 * Returns a medium (depends only on the name, name is unique)
 	 */
-	public Medium getOrCreateMedium(AudioData audioData) throws ExecutionException {
-		String name = audioData.getMedium().orElse(AudioData.DEFAULT_VALUE);
-		return this.mediumCache.get(name);
+	public Medium getOrCreateMedium(TrackValues values) throws ExecutionException {
+		return this.mediumCache.get(values.medium());
 	}
 
 	@RequiredArgsConstructor
@@ -91,14 +201,18 @@ public class AudioEntityCache {
 			}
 			return medium;
 		}
+		
+		@Override
+		public Map<String, Medium> loadAll(Iterable<? extends String> names) throws Exception {
+			return loadAllByName(names, mediumRepository::findAllByNameIn, Medium::getName, Medium::new, mediumRepository::saveAll);
+		}
 	}
 	
 	/**
 	 * Returns an artist (depends only on the name, name is unique)
 	 */
-	public Artist getOrCreateArtist(AudioData audioData) throws ExecutionException {
-		String name = audioData.getArtist().orElse(AudioData.DEFAULT_VALUE);
-		return this.artistCache.get(name);
+	public Artist getOrCreateArtist(TrackValues values) throws ExecutionException {
+		return this.artistCache.get(values.artist());
 	}
 	
 	@RequiredArgsConstructor
@@ -114,14 +228,18 @@ public class AudioEntityCache {
 			}
 			return artist;
 		}
+		
+		@Override
+		public Map<String, Artist> loadAll(Iterable<? extends String> names) throws Exception {
+			return loadAllByName(names, artistRepository::findAllByNameIn, Artist::getName, Artist::new, artistRepository::saveAll);
+		}
 	}
 	
 	/**
 	 * Returns a genre (depends only on the name, name is unique)
 	 */
-	public Genre getOrCreateGenre(AudioData audioData) throws ExecutionException {
-		String name = audioData.getGenre().orElse(AudioData.DEFAULT_VALUE);
-		return this.genreCache.get(name);
+	public Genre getOrCreateGenre(TrackValues values) throws ExecutionException {
+		return this.genreCache.get(values.genre());
 	}
 	
 	@RequiredArgsConstructor
@@ -137,6 +255,43 @@ public class AudioEntityCache {
 			}
 			return genre;
 		}
+		
+		@Override
+		public Map<String, Genre> loadAll(Iterable<? extends String> names) throws Exception {
+			return loadAllByName(names, genreRepository::findAllByNameIn, Genre::getName, Genre::new, genreRepository::saveAll);
+		}
+	}
+	
+	/**
+	 * Loads all entities with the given names by one query and saves the missing ones at once (JDBC batch).
+	 * Names are compared without trailing spaces because HSQLDB compares strings with PAD SPACE, i.e. "abc" and "abc " are equal.
+	 */
+	private static <T> Map<String, T> loadAllByName(Iterable<? extends String> names, Function<Collection<String>, List<T>> finder, Function<T, String> nameGetter, 
+			Function<String, T> factory, Consumer<List<T>> saver) {
+		Set<String> nameSet = Sets.newHashSet(names);
+		Map<String, T> entityMap = new HashMap<>();
+		for (T entity : finder.apply(nameSet)) {
+			entityMap.putIfAbsent(StringUtils.stripEnd(nameGetter.apply(entity), " "), entity);
+		}
+		List<T> newEntities = new ArrayList<>();
+		for (String name : nameSet) {
+			String key = StringUtils.stripEnd(name, " ");
+			if (!entityMap.containsKey(key)) {
+				T entity = factory.apply(name);
+				entityMap.put(key, entity);
+				newEntities.add(entity);
+			}
+		}
+		if (!newEntities.isEmpty()) {
+			logger.info("Create " + newEntities.size() + " entities");
+			saver.accept(newEntities);
+		}
+		
+		Map<String, T> result = new HashMap<>();
+		for (String name : nameSet) {
+			result.put(name, entityMap.get(StringUtils.stripEnd(name, " ")));
+		}
+		return result;
 	}
 	
 	@RequiredArgsConstructor
@@ -163,22 +318,23 @@ public class AudioEntityCache {
 		@EqualsAndHashCode.Include
 		public final AlbumIdentity albumIdentifier;
 		
-		// not part of the cache key
-		public final FileDescriptor fileDescriptor;
+		// not part of the cache key: folder and disk of the first file
+		public final String folder;
+		@Nullable 
+		public final String disk;
 	}
 	
 	/**
 	 * Returns an album (depends on the name AND the medium; name is NOT unique).
 	 */
-	public Album getOrCreateAlbum(FileDescriptor fileDescriptor, AudioData audioData, Medium medium) throws ExecutionException {
-		String name = audioData.getAlbum().orElse(AudioData.DEFAULT_VALUE);
+	public Album getOrCreateAlbum(TrackValues values, Medium medium) throws ExecutionException {
 		AlbumKey albumKey;
-		if (audioData.getAlbumIdentifier().isPresent()) {
+		if (values.albumIdentifier() != null) {
 			// artist is not set here, only required fields are used
-			albumKey = new AlbumKey(name, medium, audioData.getAlbumPublication().orElse(null), null, audioData.getAlbumIdentifier().get(), fileDescriptor);
+			albumKey = new AlbumKey(values.album(), medium, values.albumPublication(), null, values.albumIdentifier(), values.folder(), values.disk());
 		}
 		else {
-			albumKey = new AlbumKey(name, medium, audioData.getAlbumPublication().orElse(null), fileDescriptor.getFile().getParentFile(), null, fileDescriptor);
+			albumKey = new AlbumKey(values.album(), medium, values.albumPublication(), values.parentFolder(), null, values.folder(), values.disk());
 		}
 		return albumCache.get(albumKey);
 	}
@@ -186,7 +342,7 @@ public class AudioEntityCache {
 	@RequiredArgsConstructor
 	private static class AlbumCacheLoader extends CacheLoader<AlbumKey, Album> {
 		private final AlbumRepository albumRepository;
-		private final TrackRepository trackRepository;
+		private final AlbumFolderIndex albumFolderIndex;
 
 		@Override
 		public Album load(AlbumKey key) throws Exception {
@@ -215,9 +371,8 @@ public class AudioEntityCache {
 		 * For albums with tracks in different folders, you can use the {@link AlbumIdentity} object to show that they belong together.
 		 * @param key
 		 * @return
-		 * @throws IOException
 		 */
-		private Optional<Album> findSuitableAlbum(AlbumKey key) throws IOException {
+		private Optional<Album> findSuitableAlbum(AlbumKey key) {
 			if (key.albumIdentifier != null) {
 				Optional<Long> idOpt = key.albumIdentifier.getPersistentId();
 				// if: albumIdentifier refers to an already persisted album
@@ -241,80 +396,112 @@ public class AudioEntityCache {
 			 * Default approach: All files in the same folder belong to the same album.
 			 * albumName + medium + parent path are unique
 			 */
-			AudioData audioData = key.fileDescriptor.getMetaData(AudioData.class);
-			if (audioData != null) {
-				// create parent path with wildcard: /media/Artist/Album/01-Track.mp3 -> /media/Artist/Album/% 
-				String path = key.fileDescriptor.getFile().getAbsolutePath();
-				// replace filename by wildcard
-				path = path.replace(key.fileDescriptor.getFileName(), "");
-				// escape SQL wildcards
-				path = SQLUtils.escapeSQLWildcards(path);
-				// add wildcard at the end
-				String filePathWithWildcards = path + "%"; 
-				// replace disk by wildcard
-				String disk = audioData.getDisk().orElse(null);
-				if (disk != null) {
-					filePathWithWildcards = filePathWithWildcards.replace(disk, "%");
-				}
-				
-				logger.info("Find album by path: " + filePathWithWildcards);
-				final PageRequest page = PageRequest.ofSize(1);
-				List<Track> trackByPaths = trackRepository.findByAlbumAndFilePath(key.name, key.medium, filePathWithWildcards, SQLUtils.LIKE_ESCAPE_CHAR, page).getContent();
-				if (!trackByPaths.isEmpty()) {
-					Track track = trackByPaths.get(0);
-					
-					// folder count could be different: "/album/%" matches both "/artist/file" and "/artist/album/file" 
-					int folderCount = FilenameUtils.getParentFolders(key.fileDescriptor.getFile()).size();
-					int trackFolderCount = FilenameUtils.getParentFolders(track.getFile()).size();
-					if (folderCount != trackFolderCount) {
-						return Optional.empty();
-					}
-					return Optional.of(track.getAlbum());
-				}
-			}
-			return Optional.empty();
+			// /media/Artist/Album/01-Track.mp3 -> /media/Artist/Album/ (the disk is a wildcard: /media/Artist/Album/Disk 1/01-Track.mp3 -> /media/Artist/Album/*/)
+			return albumFolderIndex.find(key.folder, key.disk, key.name, key.medium);
 		}
 	}
 
 	/**
 	 * Returns a track (depends on the name, the artist, the album, the medium, the disk; name is NOT unique)
 	 */
-	public Track getOrCreateTrack(FileDescriptor fileDescriptor, AudioData audioData, Artist artist, Album album, Genre genre) {
-		String name = audioData.getTrack().orElseThrow();
-		String filePath = fileDescriptor.getFile().getAbsolutePath();
-		String filePathOnMedium = fileDescriptor.getRelativePath();
-		
+	public Track getOrCreateTrack(TrackValues values, Artist artist, Album album, Genre genre) {
 		// search track in DB
 		Track track = null;
-		if (audioData.getTrackId() != null) {
-			track = trackRepository.findById(audioData.getTrackId()).orElse(null);
+		if (values.trackId() != null) {
+			track = prefetchedTracks.remove(values.trackId());
+			if (track == null) {
+				track = trackRepository.findById(values.trackId()).orElse(null);
+			}
 		}
 		if (track == null) {
 			// track is transient
 			track = new Track();
 		}
-		
+		else {
+			addOrphanCandidates(track, artist, album, genre);
+		}
+		setTrackProperties(track, values, artist, album, genre);
+		return trackRepository.save(track);
+	}
+	
+	/**
+	 * Returns a new track which is not saved (bulk import): the caller must insert it
+	 */
+	public Track createTrack(TrackValues values, Artist artist, Album album, Genre genre) {
+		Track track = new Track();
+		setTrackProperties(track, values, artist, album, genre);
+		return track;
+	}
+	
+	private void setTrackProperties(Track track, TrackValues values, Artist artist, Album album, Genre genre) {
 		// set dependent entities
-		track.setName(name);
+		track.setName(values.track());
 		track.setArtist(artist);
 		track.setAlbum(album);
 		track.setGenre(genre);
 		// set properties
-		track.setDiskName(audioData.getDisk().orElse(null));
-		track.setFilePath(filePath);
-		track.setFilePathOnMedium(filePathOnMedium);
-		track.setFormat(audioData.getTrackFormat().orElse(null));
+		track.setDiskName(values.disk());
+		track.setFilePath(values.filePath());
+		track.setFilePathOnMedium(values.filePathOnMedium());
+		track.setFormat(values.format());
 		// track no
-		Integer trackNo = audioData.getTrackNo().orElse(null);
-		if (trackNo != null) {
-			track.setNo(trackNo);
+		if (values.trackNo() != null) {
+			track.setNo(values.trackNo());
 		}
 		// rating
-		RatingType ratingType = audioData.getRating().orElse(null);
-		if (ratingType != null) {
-			track.setRating(ratingType);
+		if (values.rating() != null) {
+			track.setRating(values.rating());
 		}
-		return trackRepository.save(track);
+		albumFolderIndex.put(values.filePath(), album);
+	}
+	
+	/**
+	 * Deletes the tracks by set-based statements (without loading them) and removes them from the caches
+	 * @param tracks the track ids and their files
+	 */
+	public void removeTracks(Map<Long, FileDescriptor> tracks) {
+		for (List<Long> chunk : Lists.partition(new ArrayList<>(tracks.keySet()), IN_CLAUSE_SIZE)) {
+			for (TrackReferences references : trackRepository.findReferencesByIdIn(chunk)) {
+				orphanCandidateArtistIds.add(references.getArtistId());
+				orphanCandidateGenreIds.add(references.getGenreId());
+				orphanCandidateAlbumIds.add(references.getAlbumId());
+				orphanCandidateMediumIds.add(references.getMediumId());
+			}
+			trackRepository.deleteAllByIdIn(chunk);
+		}
+		tracks.values().forEach(fileDescriptor -> albumFolderIndex.remove(fileDescriptor.getFile().getAbsolutePath()));
+	}
+	
+	/**
+	 * Remembers the artist, album, genre and medium of the track if the track does not refer to them anymore
+	 */
+	private void addOrphanCandidates(Track track, @Nullable Artist newArtist, @Nullable Album newAlbum, @Nullable Genre newGenre) {
+		if (newArtist == null || !track.getArtist().getId().equals(newArtist.getId())) {
+			orphanCandidateArtistIds.add(track.getArtist().getId());
+		}
+		if (newGenre == null || track.getGenre().getId() != newGenre.getId()) {
+			orphanCandidateGenreIds.add(track.getGenre().getId());
+		}
+		if (newAlbum == null || !track.getAlbum().getId().equals(newAlbum.getId())) {
+			orphanCandidateAlbumIds.add(track.getAlbum().getId());
+			orphanCandidateMediumIds.add(track.getAlbum().getMedium().getId());
+		}
+	}
+	
+	public Set<Long> getOrphanCandidateMediumIds() {
+		return orphanCandidateMediumIds;
+	}
+	
+	public Set<Long> getOrphanCandidateArtistIds() {
+		return orphanCandidateArtistIds;
+	}
+	
+	public Set<Long> getOrphanCandidateGenreIds() {
+		return orphanCandidateGenreIds;
+	}
+	
+	public Set<Long> getOrphanCandidateAlbumIds() {
+		return orphanCandidateAlbumIds;
 	}
 	
 	public Collection<Album> getAllAlbums() {
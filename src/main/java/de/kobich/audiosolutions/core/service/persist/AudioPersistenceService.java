@@ -1,25 +1,42 @@
 package de.kobich.audiosolutions.core.service.persist;
 
 import java.io.File;
+import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.collect.Lists;
@@ -27,25 +44,35 @@ import com.google.common.collect.Lists;
 import de.kobich.audiosolutions.core.service.AlbumIdentity;
 import de.kobich.audiosolutions.core.service.AudioAttribute;
 import de.kobich.audiosolutions.core.service.AudioData;
+import de.kobich.audiosolutions.core.service.AudioData.PersistenceState;
 import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.audiosolutions.core.service.AudioState;
 import de.kobich.audiosolutions.core.service.AudioStatistics;
+import de.kobich.audiosolutions.core.service.persist.AudioEntityCache.TrackValues;
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Genre;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
 import de.kobich.audiosolutions.core.service.persist.repository.AlbumRepository;
+import de.kobich.audiosolutions.core.service.persist.repository.AlbumRepository.AlbumArtistCount;
 import de.kobich.audiosolutions.core.service.persist.repository.ArtistRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.GenreRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.MediumRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.TrackRepository;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchIndex;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchResultCache;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.ProgressData;
 import de.kobich.commons.monitor.progress.ProgressSupport;
-import de.kobich.commons.utils.CloneUtils;
 import de.kobich.commons.utils.SQLUtils;
 import de.kobich.component.file.DefaultFileDescriptorComparator;
 import de.kobich.component.file.FileDescriptor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Table;
 
 /**
  * Persistent audio data.
@@ -54,6 +81,12 @@ import de.kobich.component.file.FileDescriptor;
 @Service
 public class AudioPersistenceService {
 	private static final Logger logger = Logger.getLogger(AudioPersistenceService.class);
+	// JDBC batch size of the tracks inserted by a bulk import
+	private static final int BULK_BATCH_SIZE = 500;
+	// files per prepare task of the worker threads
+	private static final int PREPARE_CHUNK_SIZE = 100;
+	// prepare tasks queued ahead of the writer
+	private static final int PREPARE_QUEUE_CAPACITY = 20;
 	@Autowired
 	private TrackRepository trackRepository;
 	@Autowired
@@ -67,7 +100,70 @@ public class AudioPersistenceService {
 	@Autowired
 	private AudioEntityCacheFactory entityCacheFactory;
 	@Autowired
+	private AudioTextSearchIndex searchIndex;
+	@Autowired
+	private AudioTextSearchResultCache searchResultCache;
+	@Autowired
     private PlatformTransactionManager transactionManager;
+	@PersistenceContext
+	private EntityManager entityManager;
+	private ExecutorService prepareExecutor;
+	
+	/**
+	 * Command to persist one file: prepared by a worker thread, executed by the writer thread.
+	 * The undo state contains all fields of the audio data which are changed by persisting.
+	 * The values of the track are only read for files to be inserted or updated.
+	 */
+	private static record PersistCommand(FileDescriptor fileDescriptor, @Nullable AudioData audioData, @Nullable PersistenceState undoState, @Nullable TrackValues values) {
+		
+		public static PersistCommand of(FileDescriptor fileDescriptor) {
+			AudioData audioData = fileDescriptor.getMetaData(AudioData.class);
+			if (audioData == null) {
+				return new PersistCommand(fileDescriptor, null, null, null);
+			}
+			AudioState state = audioData.getState();
+			TrackValues values = state.isTransient() || state.isPersistentModified() ? TrackValues.of(fileDescriptor, audioData) : null;
+			return new PersistCommand(fileDescriptor, audioData, audioData.getPersistenceState(), values);
+		}
+		
+		/**
+		 * Returns true if the file is inserted, updated or removed
+		 */
+		public boolean isChange() {
+			if (undoState == null) {
+				return false;
+			}
+			AudioState state = undoState.state();
+			return state.isTransient() || state.isPersistentModified() || AudioState.REMOVED.equals(state);
+		}
+		
+		/**
+		 * Returns true if the audio data and its persistence state have not been changed since the command was prepared, 
+		 * e.g. by an earlier partition which contains the same file
+		 */
+		public boolean isCurrent() {
+			if (fileDescriptor.getMetaData(AudioData.class) != audioData) {
+				return false;
+			}
+			return audioData == null || audioData.getPersistenceState().equals(undoState);
+		}
+	}
+	/**
+	 * New track of a bulk import which is inserted at the end of the partition
+	 */
+	private static record BulkTrack(Track track, AudioData audioData) {}
+	
+	@PostConstruct
+	public void init() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("audio-persist-");
+		threadFactory.setDaemon(true);
+		this.prepareExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		prepareExecutor.shutdownNow();
+	}
 	
 	/**
 	 * Persists the given file descriptors
@@ -78,8 +174,57 @@ public class AudioPersistenceService {
 	 */
 	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public Set<FileDescriptor> persist(Collection<FileDescriptor> fileDescriptors, @Nullable IServiceProgressMonitor monitor) throws AudioException {
+		return persist(fileDescriptors, PartitionSizer.adaptive(), monitor, false);
+	}
+	
+	/**
+	 * Persists the given file descriptors
+	 * @param fileDescriptors
+	 * @param partitionSizer defines the number of files per transaction and records the partitions
+	 * @param monitor
+	 * @return set of persisted files
+	 * @throws AudioException
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public Set<FileDescriptor> persist(Collection<FileDescriptor> fileDescriptors, PartitionSizer partitionSizer, @Nullable IServiceProgressMonitor monitor) throws AudioException {
+		return persist(fileDescriptors, partitionSizer, monitor, false);
+	}
+	
+	/**
+	 * Persists the given file descriptors as fast as possible (e.g. the initial import of a large library).
+	 * The transaction log of the database is switched off and new tracks are inserted in large JDBC batches. 
+	 * Durability is restored by a checkpoint at the end. 
+	 * If the application crashes during the import, the database is reset to the last checkpoint: the import must be rerun.
+	 * Most of the time is spent by the database maintaining its indexes, so the import is faster than {@link #persist(Collection, IServiceProgressMonitor)}, 
+	 * but not by an order of magnitude.
+	 * @param fileDescriptors
+	 * @param monitor
+	 * @return set of persisted files
+	 * @throws AudioException
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public Set<FileDescriptor> persistBulk(Collection<FileDescriptor> fileDescriptors, @Nullable IServiceProgressMonitor monitor) throws AudioException {
+		return persist(fileDescriptors, PartitionSizer.adaptive(), monitor, true);
+	}
+	
+	/**
+	 * Persists the given file descriptors as fast as possible (see {@link #persistBulk(Collection, IServiceProgressMonitor)})
+	 * @param fileDescriptors
+	 * @param partitionSizer defines the number of files per transaction and records the partitions
+	 * @param monitor
+	 * @return set of persisted files
+	 * @throws AudioException
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public Set<FileDescriptor> persistBulk(Collection<FileDescriptor> fileDescriptors, PartitionSizer partitionSizer, @Nullable IServiceProgressMonitor monitor) throws AudioException {
+		return persist(fileDescriptors, partitionSizer, monitor, true);
+	}
+	
+	private Set<FileDescriptor> persist(Collection<FileDescriptor> fileDescriptors, PartitionSizer partitionSizer, @Nullable IServiceProgressMonitor monitor, boolean bulkImport) throws AudioException {
 		final AudioEntityCache entityCache = entityCacheFactory.createCache();
-		Map<FileDescriptor, AudioData> backupMap = new HashMap<>();
+		// undo journal of the current partition
+		List<PersistCommand> journal = new ArrayList<>();
+		Deque<Future<List<PersistCommand>>> commandQueue = new ArrayDeque<>();
 		
 		List<FileDescriptor> fileDescriptorList = new ArrayList<FileDescriptor>(fileDescriptors);
 		Collections.sort(fileDescriptorList, new DefaultFileDescriptorComparator());
@@ -88,23 +233,54 @@ public class AudioPersistenceService {
 		progressSupport.monitorBeginTask(new ProgressData("Saving audio data...", fileDescriptorList.size()));
 		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 		try {
+			if (bulkImport) {
+				// https://hsqldb.org/doc/2.0/guide/deployment-chapt.html#dec_bulk_operations
+				transactionTemplate.executeWithoutResult(status -> executeNative("SET FILES LOG FALSE"));
+			}
+			// find suitable albums by the folders of the files to be saved
+			transactionTemplate.executeWithoutResult(status -> {
+				entityCache.loadAlbumFolderIndex(fileDescriptorList);
+			});
 			
 			Set<FileDescriptor> result = new HashSet<>();
+			// worker threads prepare the commands in chunks, this thread is the only writer
+			// the bounded queue keeps the workers at most PREPARE_QUEUE_CAPACITY chunks ahead of the writer
+			Iterator<List<FileDescriptor>> chunkIterator = Lists.partition(fileDescriptorList, PREPARE_CHUNK_SIZE).iterator();
+			fillCommandQueue(commandQueue, chunkIterator);
+			List<PersistCommand> pending = new ArrayList<>();
 			// split bulk inserts into partitions: https://hsqldb.org/doc/2.0/guide/deployment-chapt.html#dec_bulk_operations
-			final List<List<FileDescriptor>> partitions = Lists.partition(fileDescriptorList, 1000);
-			for (final List<FileDescriptor> partition : partitions) {
+			// the size of each partition is chosen by the sizer based on the previous ones
+			while (!pending.isEmpty() || !commandQueue.isEmpty()) {
+				int partitionSize = partitionSizer.getSize();
+				while (pending.size() < partitionSize && !commandQueue.isEmpty()) {
+					pending.addAll(commandQueue.poll().get());
+					fillCommandQueue(commandQueue, chunkIterator);
+				}
+				List<PersistCommand> partition = pending.subList(0, Math.min(partitionSize, pending.size()));
+				final List<PersistCommand> commands = revalidate(partition);
+				partition.clear();
+				
+				final StopWatch stopWatch = StopWatch.createStarted();
 				Set<FileDescriptor> partitionResult = transactionTemplate.execute(status -> { 
 					try {
-						return persist(partition, entityCache, progressSupport, backupMap);
+						Set<FileDescriptor> persisted = persist(commands, entityCache, progressSupport, journal, bulkImport);
+						// the remaining time is needed by the commit
+						stopWatch.split();
+						return persisted;
 					} 
 					catch (Exception e) {
 						// convert to runtime exception
 						throw new RuntimeException(e);
 					}
 				});
+				stopWatch.stop();
+				partitionSizer.record(new PartitionSizer.Partition(commands.size(), stopWatch.getTime(), stopWatch.getTime() - stopWatch.getSplitTime()));
 				result.addAll(partitionResult);
-				// successfully committed: backup not needed anymore
-				backupMap.clear();
+				// successfully committed: undo not needed anymore
+				journal.clear();
+				searchIndex.refreshTracks(getChangedTrackIds(commands));
+				// after the index: results found by the old index must not be cached with the new version
+				searchResultCache.invalidate();
 			}
 			
 			progressSupport.monitorEndTask("Audio data saved");
@@ -113,11 +289,9 @@ public class AudioPersistenceService {
 		catch (Exception e) {
 			logger.error(e.getMessage(), e);
 			// restore original state
-			for (FileDescriptor fd : fileDescriptors) {
-				AudioData ad = backupMap.get(fd);
-				if (ad != null) {
-					fd.setMetaData(ad);
-				}
+			for (PersistCommand command : journal) {
+				command.fileDescriptor().setMetaData(command.audioData());
+				command.audioData().restorePersistenceState(command.undoState());
 			}
 			// return correct exception 
 			if (ExceptionUtils.getRootCause(e) instanceof AudioException appExc) {
@@ -126,21 +300,90 @@ public class AudioPersistenceService {
 			throw new AudioException(AudioException.INTERNAL);
 		}
 		finally {
-			transactionTemplate.executeWithoutResult(status -> {
-				updateAlbumArtist(entityCache);
-			});
-			transactionTemplate.executeWithoutResult(status -> {
-				deleteOrphanedData();
-			});
+			// stop preparing commands which will not be written anymore
+			commandQueue.forEach(f -> f.cancel(true));
+			try {
+				transactionTemplate.executeWithoutResult(status -> {
+					updateAlbumArtist(entityCache);
+				});
+				transactionTemplate.executeWithoutResult(status -> {
+					deleteOrphanedData(entityCache);
+				});
+			}
+			finally {
+				// the album artists and the deleted albums change the results of the text search
+				searchResultCache.invalidate();
+				if (bulkImport) {
+					// restore durability
+					transactionTemplate.executeWithoutResult(status -> executeNative("SET FILES LOG TRUE", "CHECKPOINT"));
+				}
+			}
 		}
 	}
 	
-	private Set<FileDescriptor> persist(List<FileDescriptor> fileDescriptorList, AudioEntityCache entityCache, ProgressSupport progressSupport, Map<FileDescriptor, AudioData> backupMap) throws AudioException, ExecutionException {
+	/**
+	 * Returns the IDs of the tracks inserted, updated or removed by the given commands
+	 */
+	private static Set<Long> getChangedTrackIds(List<PersistCommand> commands) {
+		Set<Long> trackIds = new HashSet<>();
+		for (PersistCommand command : commands) {
+			if (command.isChange() && command.audioData().getTrackId() != null) {
+				trackIds.add(command.audioData().getTrackId());
+			}
+		}
+		return trackIds;
+	}
+	
+	/**
+	 * Submits prepare tasks until the queue is full or all chunks are submitted
+	 */
+	private void fillCommandQueue(Deque<Future<List<PersistCommand>>> commandQueue, Iterator<List<FileDescriptor>> chunkIterator) {
+		while (commandQueue.size() < PREPARE_QUEUE_CAPACITY && chunkIterator.hasNext()) {
+			List<FileDescriptor> chunk = chunkIterator.next();
+			commandQueue.add(prepareExecutor.submit(() -> prepare(chunk)));
+		}
+	}
+	
+	/**
+	 * Creates the persistence commands of the given files (called by the worker threads)
+	 */
+	private static List<PersistCommand> prepare(List<FileDescriptor> fileDescriptors) {
+		List<PersistCommand> commands = new ArrayList<>(fileDescriptors.size());
+		for (FileDescriptor fileDescriptor : fileDescriptors) {
+			commands.add(PersistCommand.of(fileDescriptor));
+		}
+		return commands;
+	}
+	
+	/**
+	 * Copies the commands of a partition and prepares the outdated ones again: 
+	 * the undo journal must contain the state right before the partition is written
+	 */
+	private static List<PersistCommand> revalidate(List<PersistCommand> commands) {
+		List<PersistCommand> result = new ArrayList<>(commands.size());
+		for (PersistCommand command : commands) {
+			result.add(command.isCurrent() ? command : PersistCommand.of(command.fileDescriptor()));
+		}
+		return result;
+	}
+	
+	private Set<FileDescriptor> persist(List<PersistCommand> commands, AudioEntityCache entityCache, ProgressSupport progressSupport, List<PersistCommand> journal, boolean bulkImport) throws AudioException, ExecutionException {
 		Set<FileDescriptor> result = new HashSet<FileDescriptor>();
-		for (FileDescriptor fileDescriptor : fileDescriptorList) {
-			AudioData audioData = (AudioData) fileDescriptor.getMetaData(AudioData.class);
+		List<BulkTrack> bulkTracks = new ArrayList<>();
+		Map<Long, FileDescriptor> removedTracks = new HashMap<>();
+		List<TrackValues> trackValues = commands.stream().map(PersistCommand::values).filter(v -> v != null).collect(Collectors.toList());
+		// check all files before anything is saved
+		entityCache.checkPreconditions(trackValues);
+		// load medium, artist and genre of all files at once
+		entityCache.prefetch(trackValues);
+		for (PersistCommand command : commands) {
+			FileDescriptor fileDescriptor = command.fileDescriptor();
+			AudioData audioData = command.audioData();
+			TrackValues values = command.values();
 			if (audioData != null) {
-				backupMap.put(fileDescriptor, CloneUtils.deepCopy(audioData));
+				if (command.isChange()) {
+					journal.add(command);
+				}
 				
 				switch (audioData.getState()) {
 					case PERSISTENT:
@@ -155,19 +398,22 @@ public class AudioPersistenceService {
 						// insert or update
 						progressSupport.monitorSubTask("Saving file: " + fileDescriptor.getRelativePath(), 1);
 						
-						entityCache.checkPreconditions(fileDescriptor, audioData);
-
 						// 1. medium
-						Medium medium = entityCache.getOrCreateMedium(audioData);
+						Medium medium = entityCache.getOrCreateMedium(values);
 						// 2. artist
-						Artist artist = entityCache.getOrCreateArtist(audioData);
+						Artist artist = entityCache.getOrCreateArtist(values);
 						// 3. genre
-						Genre genre = entityCache.getOrCreateGenre(audioData);
+						Genre genre = entityCache.getOrCreateGenre(values);
 						// 4. album
-						Album album = entityCache.getOrCreateAlbum(fileDescriptor, audioData, medium);
+						Album album = entityCache.getOrCreateAlbum(values, medium);
 						// 5. track
-						Track track = entityCache.getOrCreateTrack(fileDescriptor, audioData, artist, album, genre);
-						audioData.setAsPersisted(track.getId());
+						if (bulkImport && values.trackId() == null) {
+							bulkTracks.add(new BulkTrack(entityCache.createTrack(values, artist, album, genre), audioData));
+						}
+						else {
+							Track track = entityCache.getOrCreateTrack(values, artist, album, genre);
+							audioData.setAsPersisted(track.getId());
+						}
 						audioData.setAlbumIdentity(AlbumIdentity.create(album));
 						
 						result.add(fileDescriptor);
@@ -177,7 +423,7 @@ public class AudioPersistenceService {
 						
 						Long trackId = audioData.getTrackId();
 						if (trackId != null) {
-							trackRepository.deleteById(trackId);
+							removedTracks.put(trackId, fileDescriptor);
 						}
 						fileDescriptor.setMetaData(null);
 						result.add(fileDescriptor);
@@ -189,9 +435,36 @@ public class AudioPersistenceService {
 				progressSupport.monitorSubTask("Skipping file: " + fileDescriptor.getRelativePath(), 1);
 			}
 		}
+		if (!removedTracks.isEmpty()) {
+			entityCache.removeTracks(removedTracks);
+		}
+		if (!bulkTracks.isEmpty()) {
+			insertTracks(bulkTracks.stream().map(BulkTrack::track).toList());
+			bulkTracks.forEach(t -> t.audioData().setAsPersisted(t.track().getId()));
+		}
 		return result;
 	}
 	
+	/**
+	 * Inserts new tracks with a larger JDBC batch size: the batches are executed by the flush at the end of the transaction.
+	 * A StatelessSession saves no measurable time here and does not execute its last batch when it is closed (Hibernate 6.1).
+	 */
+	private void insertTracks(List<Track> tracks) {
+		Session session = entityManager.unwrap(Session.class);
+		session.setJdbcBatchSize(BULK_BATCH_SIZE);
+		tracks.forEach(session::persist);
+	}
+	
+	private void executeNative(String... sqls) {
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (Statement stmt = connection.createStatement()) {
+				for (String sql : sqls) {
+					stmt.execute(sql);
+				}
+			}
+		});
+	}
+	
 	/**
 	 * Returns the count of items of the give attribute
 	 * @param attribute
@@ -231,38 +504,120 @@ public class AudioPersistenceService {
 		return trackRepository.findFilePathLike(path, SQLUtils.LIKE_ESCAPE_CHAR);
 	}
 	
+	/**
+	 * Passes the paths of all persisted files below the given directory to the consumer without loading them at once
+	 * @param startDirectory
+	 * @param consumer
+	 */
+	@Transactional(rollbackFor=AudioException.class, readOnly = true)
+	public void getFilenames(File startDirectory, Consumer<String> consumer) {
+		String path = SQLUtils.escapeLikeParam(getDirectoryPath(startDirectory), false, true);
+		try (Stream<String> filePaths = trackRepository.streamFilePathLike(path, SQLUtils.LIKE_ESCAPE_CHAR)) {
+			filePaths.forEach(consumer);
+		}
+	}
+	
+	/**
+	 * Returns the number of persisted files below the given directory
+	 */
+	@Transactional(rollbackFor=AudioException.class, readOnly = true)
+	public long getFilenameCount(File startDirectory) {
+		String path = SQLUtils.escapeLikeParam(getDirectoryPath(startDirectory), false, true);
+		return trackRepository.countFilePathLike(path, SQLUtils.LIKE_ESCAPE_CHAR);
+	}
+	
+	/**
+	 * Returns the paths of the persisted files directly contained in the given directory (without sub directories)
+	 */
+	@Transactional(rollbackFor=AudioException.class, readOnly = true)
+	public List<String> getFilenamesInDirectory(File directory) {
+		String path = SQLUtils.escapeLikeParam(getDirectoryPath(directory), false, true);
+		String subDirectoryPath = path + SQLUtils.escapeLikeParam(File.separator, false, true);
+		return trackRepository.findFilePathLikeAndNotLike(path, subDirectoryPath, SQLUtils.LIKE_ESCAPE_CHAR);
+	}
+	
+	/**
+	 * Returns the absolute path of the directory ending with a separator (root directories like / or C:\ already end with one)
+	 */
+	public static String getDirectoryPath(File directory) {
+		String path = directory.getAbsolutePath();
+		return path.endsWith(File.separator) ? path : path + File.separator;
+	}
+	
 	@Transactional(rollbackFor=AudioException.class)
 	public void removeAll() throws AudioException {
-		trackRepository.deleteAll();
-		genreRepository.deleteAll();
-		albumRepository.deleteAll();
-		artistRepository.deleteAll();
-		mediumRepository.deleteAll();
+		// without AND COMMIT, TRUNCATE is part of the transaction but does not delete row by row: albums refer to artists and media
+		for (Class<?> entityClass : List.of(Track.class, Album.class, Genre.class, Artist.class, Medium.class)) {
+			String table = entityClass.getAnnotation(Table.class).name();
+			// the second-level cache of the entity is locked until the commit and evicted afterwards, the cached queries are invalidated
+			NativeQuery<?> query = entityManager.createNativeQuery("TRUNCATE TABLE " + table).unwrap(NativeQuery.class);
+			query.addSynchronizedEntityClass(entityClass).executeUpdate();
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				searchIndex.clear();
+				searchResultCache.invalidate();
+			}
+		});
 	}
 	
+	/**
+	 * Sets the album artist of all albums touched by this run: the artist of all tracks or none for collections with several artists 
+	 */
 	private void updateAlbumArtist(AudioEntityCache entityCache) {
-		Collection<Album> albums = entityCache.getAllAlbums();
-		for (Album album : albums) {
-			List<Artist> albumArtists = artistRepository.findAllByAlbum(album);
-			if (albumArtists.size() == 1) {
-				Artist albumArtist = albumArtists.get(0);
-				if (album.getArtist().isEmpty() || !album.getArtist().get().equals(albumArtist)) {
-					logger.info(String.format("Set artist <%s> for album <%s>", albumArtist, album));
-					album.setArtist(albumArtist);
-					albumRepository.save(album);
+		Stream<Long> albumIdStream = Stream.concat(entityCache.getAllAlbums().stream().map(Album::getId), entityCache.getOrphanCandidateAlbumIds().stream());
+		List<Long> albumIds = albumIdStream.distinct().collect(Collectors.toList());
+		List<Long> singleArtistAlbumIds = new ArrayList<>();
+		List<Long> collectionAlbumIds = new ArrayList<>();
+		for (List<Long> chunk : Lists.partition(albumIds, AudioEntityCache.IN_CLAUSE_SIZE)) {
+			for (AlbumArtistCount count : albumRepository.countArtistsByAlbumIds(chunk)) {
+				if (count.getArtistCount() == 1 && !count.getMinArtistId().equals(count.getArtistId())) {
+					logger.info(String.format("Set artist <%d> for album <%d>", count.getMinArtistId(), count.getAlbumId()));
+					singleArtistAlbumIds.add(count.getAlbumId());
 				}
-			}
-			else if (albumArtists.size() > 1) {
-				if (album.getArtist().isPresent()) {
-					logger.info(String.format("Remove artist <%s> from album <%s>", album.getArtist().get(), album));
-					album.setArtist(null);
-					albumRepository.save(album);
+				else if (count.getArtistCount() > 1 && count.getArtistId() != null) {
+					logger.info(String.format("Remove artist <%d> from album <%d>", count.getArtistId(), count.getAlbumId()));
+					collectionAlbumIds.add(count.getAlbumId());
 				}
 			}
 		}
+		for (List<Long> chunk : Lists.partition(singleArtistAlbumIds, AudioEntityCache.IN_CLAUSE_SIZE)) {
+			albumRepository.updateArtistByTracks(chunk);
+		}
+		for (List<Long> chunk : Lists.partition(collectionAlbumIds, AudioEntityCache.IN_CLAUSE_SIZE)) {
+			albumRepository.removeArtist(chunk);
+		}
 	}
 	
-	private void deleteOrphanedData() {
+	/**
+	 * Deletes the albums, genres, artists and media which lost their last reference during this run
+	 */
+	private void deleteOrphanedData(AudioEntityCache entityCache) {
+		// perform delete in reverse order 
+		int albumCount = deleteAllWithoutTrack(entityCache.getOrphanCandidateAlbumIds(), albumRepository::deleteAllWithoutTrackByIdIn);
+		int genreCount = deleteAllWithoutTrack(entityCache.getOrphanCandidateGenreIds(), genreRepository::deleteAllWithoutTrackByIdIn);
+		int artistCount = deleteAllWithoutTrack(entityCache.getOrphanCandidateArtistIds(), artistRepository::deleteAllWithoutTrackByIdIn);
+		int mediumCount = deleteAllWithoutTrack(entityCache.getOrphanCandidateMediumIds(), mediumRepository::deleteAllWithoutTrackByIdIn);
+		if (albumCount + genreCount + artistCount + mediumCount > 0) {
+			logger.info(String.format("Orphaned data deleted: %d albums, %d genres, %d artists, %d media", albumCount, genreCount, artistCount, mediumCount));
+		}
+	}
+	
+	private static int deleteAllWithoutTrack(Set<Long> ids, Function<Collection<Long>, Integer> deleter) {
+		int count = 0;
+		for (List<Long> chunk : Lists.partition(new ArrayList<>(ids), AudioEntityCache.IN_CLAUSE_SIZE)) {
+			count += deleter.apply(chunk);
+		}
+		return count;
+	}
+	
+	/**
+	 * Deletes all albums, genres, artists and media without tracks. 
+	 * Requires full table scans: persist() already deletes the orphaned data of its changes, so this is only a maintenance operation.
+	 */
+	@Transactional(rollbackFor=AudioException.class)
+	public void deleteOrphanedData() {
 		logger.info("Deleting orphaned data...");
 		// perform delete in reverse order 
 		albumRepository.findAllWithoutTrack().forEach(a -> logger.info("Album without track: " + a));
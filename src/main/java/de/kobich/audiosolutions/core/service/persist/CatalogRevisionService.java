@@ -0,0 +1,115 @@
+package de.kobich.audiosolutions.core.service.persist;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import de.kobich.audiosolutions.core.service.AudioException;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Counts the changes of the names of the tracks and of their artists, albums, media and genres.
+ * The revision is incremented by database triggers in the transaction of each change,
+ * so it also covers changes made without the persistence service and it is part of a backup.
+ * Files derived from the catalog (e.g. the text search index) store the revision they reflect and compare it with the database.
+ * @see https://hsqldb.org/doc/guide/triggers-chapt.html
+ */
+@Service
+@DependsOn("entityManagerFactory")
+public class CatalogRevisionService {
+	private static final Logger logger = Logger.getLogger(CatalogRevisionService.class);
+	private static final String REVISION_TABLE = "audiosolutions_revision";
+	// artists, albums, media and genres without tracks are not part of the catalog: only their updates are counted
+	private static final List<RevisionTrigger> TRIGGERS = List.of(
+			new RevisionTrigger("track", "INSERT", List.of()),
+			new RevisionTrigger("track", "DELETE", List.of()),
+			new RevisionTrigger("track", "UPDATE", List.of("name", "artist_id", "album_id", "genre_id")),
+			new RevisionTrigger("artist", "UPDATE", List.of("name")),
+			new RevisionTrigger("album", "UPDATE", List.of("name", "medium_id")),
+			new RevisionTrigger("medium", "UPDATE", List.of("name")),
+			new RevisionTrigger("genre", "UPDATE", List.of("name")));
+	@Autowired
+	private DataSource dataSource;
+
+	/**
+	 * Trigger which increments the revision
+	 * @param tableName
+	 * @param event INSERT, UPDATE or DELETE
+	 * @param columnNames columns of an update which must be changed, Hibernate sets all columns
+	 */
+	private static record RevisionTrigger(String tableName, String event, List<String> columnNames) {
+		public String getName() {
+			return (tableName + "_" + event + "_revision").toUpperCase(Locale.ROOT);
+		}
+
+		public String getSQL() {
+			String increment = "UPDATE " + REVISION_TABLE + " SET revision = revision + 1";
+			if (columnNames.isEmpty()) {
+				return String.format("CREATE TRIGGER %s AFTER %s ON %s FOR EACH STATEMENT %s", getName(), event, tableName, increment);
+			}
+			String changed = columnNames.stream().map(c -> "old." + c + " <> new." + c).collect(Collectors.joining(" OR "));
+			return String.format("CREATE TRIGGER %s AFTER %s ON %s REFERENCING OLD ROW AS old NEW ROW AS new FOR EACH ROW WHEN (%s) %s", getName(), event, tableName, changed, increment);
+		}
+	}
+
+	/**
+	 * Creates the revision table and the triggers if they are missing (e.g. in a database of an older version)
+	 */
+	@PostConstruct
+	public void init() {
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS " + REVISION_TABLE + " (revision BIGINT NOT NULL)");
+			stmt.execute("INSERT INTO " + REVISION_TABLE + " SELECT 0 FROM (VALUES(0)) WHERE NOT EXISTS (SELECT * FROM " + REVISION_TABLE + ")");
+			Set<String> triggerNames = new HashSet<>();
+			try (ResultSet rs = stmt.executeQuery("SELECT TRIGGER_NAME FROM INFORMATION_SCHEMA.TRIGGERS")) {
+				while (rs.next()) {
+					triggerNames.add(rs.getString(1));
+				}
+			}
+			for (RevisionTrigger trigger : TRIGGERS) {
+				if (!triggerNames.contains(trigger.getName())) {
+					logger.info("Creating trigger " + trigger.getName());
+					stmt.execute(trigger.getSQL());
+				}
+			}
+			if (!connection.getAutoCommit()) {
+				connection.commit();
+			}
+		}
+		catch (SQLException exc) {
+			logger.error("Catalog revision cannot be initialized: " + exc.getMessage(), exc);
+		}
+	}
+
+	/**
+	 * Returns the committed revision of the catalog
+	 */
+	public long getRevision() throws AudioException {
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT revision FROM " + REVISION_TABLE)) {
+			if (!rs.next()) {
+				throw new SQLException("Table " + REVISION_TABLE + " is empty");
+			}
+			return rs.getLong(1);
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.INTERNAL, exc);
+		}
+	}
+}
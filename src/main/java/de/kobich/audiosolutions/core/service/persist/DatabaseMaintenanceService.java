@@ -0,0 +1,181 @@
+package de.kobich.audiosolutions.core.service.persist;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
+import de.kobich.commons.monitor.progress.ProgressSupport;
+
+/**
+ * Compacts and tunes the HSQLDB database files.
+ * Deleted rows of cached tables leave unused space in the .data file, which is only released by CHECKPOINT DEFRAG.
+ * @see https://hsqldb.org/doc/guide/management-chapt.html
+ */
+@Service
+public class DatabaseMaintenanceService {
+	private static final Logger logger = Logger.getLogger(DatabaseMaintenanceService.class);
+	public static final double DEFAULT_FRAGMENTATION_THRESHOLD = 0.2;
+	@Autowired
+	private DataSource dataSource;
+
+	/**
+	 * Space statistics of the database files
+	 * @param dataFileSize size of the .data file
+	 * @param logFileSize size of the .log file
+	 * @param usedBytes used part of the .data file
+	 * @param lostBytes unused space within the used part (deleted rows)
+	 */
+	public static record DatabaseStatistics(long dataFileSize, long logFileSize, long usedBytes, long lostBytes) {
+		/**
+		 * Returns the ratio of unused space (0.0 - 1.0)
+		 */
+		public double fragmentation() {
+			return usedBytes == 0 ? 0 : (double) lostBytes / usedBytes;
+		}
+	}
+
+	/**
+	 * Tuning settings of the database files. Cache settings are applied after the next start of the database.
+	 * @param cacheRows max. number of rows of cached tables held in memory (hsqldb.cache_rows)
+	 * @param cacheSizeKB max. size of rows of cached tables held in memory (hsqldb.cache_size)
+	 * @param nioDataFile if memory-mapped access to the .data file is used (hsqldb.nio_data_file)
+	 * @param logSizeMB size of the .log file which triggers a checkpoint (hsqldb.log_size)
+	 * @param defragLimitPercent fragmentation which triggers a defragmentation at checkpoint, 0 to disable (hsqldb.defrag_limit)
+	 */
+	public static record DatabaseSettings(int cacheRows, int cacheSizeKB, boolean nioDataFile, int logSizeMB, int defragLimitPercent) {}
+
+	/**
+	 * Switches the transaction log on again if the application crashed during a bulk import, 
+	 * which switches it off (see {@link AudioPersistenceService#persistBulk(java.util.Collection, IServiceProgressMonitor)}).
+	 * Called when the spring context is started.
+	 */
+	public void resetTransactionLog() {
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES WHERE PROPERTY_NAME = 'hsqldb.log_data'")) {
+			if (rs.next() && !Boolean.parseBoolean(rs.getString(1))) {
+				logger.warn("Transaction log was switched off by an aborted bulk import: switching it on");
+				stmt.execute("SET FILES LOG TRUE");
+			}
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the .data and .log file or nothing for in-memory databases
+	 */
+	public Optional<DatabaseStatistics> getStatistics() throws AudioException {
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT CACHE_FILE, FILE_FREE_POS, FILE_LOST_BYTES FROM INFORMATION_SCHEMA.SYSTEM_CACHEINFO")) {
+			if (!rs.next()) {
+				return Optional.empty();
+			}
+			File dataFile = new File(rs.getString("CACHE_FILE"));
+			File logFile = new File(dataFile.getParentFile(), FilenameUtils.getBaseName(dataFile.getName()) + ".log");
+			return Optional.of(new DatabaseStatistics(dataFile.length(), logFile.length(), rs.getLong("FILE_FREE_POS"), rs.getLong("FILE_LOST_BYTES")));
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.INTERNAL, exc);
+		}
+	}
+
+	/**
+	 * Rewrites the .data file without unused space. The database is blocked meanwhile.
+	 * @param monitor
+	 */
+	public void defragment(IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Defragmenting database...");
+		Optional<DatabaseStatistics> before = getStatistics();
+		execute("CHECKPOINT DEFRAG");
+		Optional<DatabaseStatistics> after = getStatistics();
+		if (before.isPresent() && after.isPresent()) {
+			logger.info("Database defragmented: %d -> %d bytes".formatted(before.get().dataFileSize(), after.get().dataFileSize()));
+		}
+		progressSupport.monitorEndTask("Database defragmented");
+	}
+
+	/**
+	 * Defragments the database if its fragmentation exceeds the given threshold
+	 * @param maxFragmentation ratio of unused space (0.0 - 1.0)
+	 * @param monitor
+	 * @return true if the database was defragmented
+	 */
+	public boolean defragmentIfRequired(double maxFragmentation, IServiceProgressMonitor monitor) throws AudioException {
+		Optional<DatabaseStatistics> statistics = getStatistics();
+		if (statistics.isEmpty() || statistics.get().fragmentation() <= maxFragmentation) {
+			return false;
+		}
+		defragment(monitor);
+		return true;
+	}
+
+	/**
+	 * Returns the current tuning settings
+	 */
+	public DatabaseSettings getSettings() throws AudioException {
+		Map<String, String> properties = new HashMap<>();
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT PROPERTY_NAME, PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES WHERE PROPERTY_SCOPE = 'DATABASE'")) {
+			while (rs.next()) {
+				properties.put(rs.getString(1), rs.getString(2));
+			}
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.INTERNAL, exc);
+		}
+		return new DatabaseSettings(
+				Integer.parseInt(properties.get("hsqldb.cache_rows")),
+				Integer.parseInt(properties.get("hsqldb.cache_size")),
+				Boolean.parseBoolean(properties.get("hsqldb.nio_data_file")),
+				Integer.parseInt(properties.get("hsqldb.log_size")),
+				Integer.parseInt(properties.get("hsqldb.defrag_limit")));
+	}
+
+	/**
+	 * Changes the tuning settings (stored persistently in the database)
+	 * @param settings
+	 */
+	public void setSettings(DatabaseSettings settings) throws AudioException {
+		logger.info("Changing database settings: " + settings);
+		execute(
+				"SET FILES CACHE ROWS " + settings.cacheRows(),
+				"SET FILES CACHE SIZE " + settings.cacheSizeKB(),
+				"SET FILES NIO " + (settings.nioDataFile() ? "TRUE" : "FALSE"),
+				"SET FILES LOG SIZE " + settings.logSizeMB(),
+				"SET FILES DEFRAG " + settings.defragLimitPercent());
+	}
+
+	private void execute(String... sqls) throws AudioException {
+		try (Connection connection = dataSource.getConnection();
+				Statement stmt = connection.createStatement()) {
+			for (String sql : sqls) {
+				stmt.execute(sql);
+			}
+		}
+		catch (SQLException exc) {
+			logger.error(exc.getMessage(), exc);
+			throw new AudioException(AudioException.INTERNAL, exc);
+		}
+	}
+}
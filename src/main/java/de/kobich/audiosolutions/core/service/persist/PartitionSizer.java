@@ -0,0 +1,115 @@
+package de.kobich.audiosolutions.core.service.persist;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import lombok.Getter;
+
+/**
+ * Defines the number of files saved per transaction by {@link AudioPersistenceService#persist}.
+ * The adaptive sizer measures the throughput of each partition and chooses the next size so that one transaction takes about the target duration:
+ * cheap changes (e.g. ratings) use large partitions, expensive changes (e.g. first imports creating many albums) use small ones which do not block readers for long.
+ * A sizer records the partitions of one call and must not be shared between concurrent calls.
+ */
+public class PartitionSizer {
+	private static final Logger logger = Logger.getLogger(PartitionSizer.class);
+	public static final int DEFAULT_INITIAL_SIZE = 1000;
+	public static final int DEFAULT_MIN_SIZE = 100;
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	public static final Duration DEFAULT_TARGET_DURATION = Duration.ofSeconds(1);
+	// the size changes at most by this factor per partition
+	private static final int MAX_GROWTH = 2;
+
+	/**
+	 * Statistics of one partition
+	 * @param size number of files
+	 * @param millis duration of the transaction
+	 * @param commitMillis duration of the commit (included in millis)
+	 */
+	public static record Partition(int size, long millis, long commitMillis) {
+		/**
+		 * Returns the number of files saved per second
+		 */
+		public long filesPerSecond() {
+			return size * 1000L / Math.max(1, millis);
+		}
+	}
+
+	@Getter
+	private final int minSize;
+	@Getter
+	private final int maxSize;
+	@Getter
+	private final Duration targetDuration;
+	/**
+	 * Returns the size of the next partition
+	 */
+	@Getter
+	private int size;
+	private final List<Partition> partitions;
+
+	private PartitionSizer(int initialSize, int minSize, int maxSize, Duration targetDuration) {
+		if (minSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Illegal partition bounds: " + minSize + " - " + maxSize);
+		}
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.targetDuration = targetDuration;
+		this.size = Math.max(minSize, Math.min(maxSize, initialSize));
+		this.partitions = new ArrayList<>();
+	}
+
+	/**
+	 * Returns an adaptive sizer with default bounds
+	 */
+	public static PartitionSizer adaptive() {
+		return adaptive(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_TARGET_DURATION);
+	}
+
+	/**
+	 * Returns an adaptive sizer
+	 * @param minSize min. number of files per transaction
+	 * @param maxSize max. number of files per transaction
+	 * @param targetDuration desired duration of one transaction
+	 */
+	public static PartitionSizer adaptive(int minSize, int maxSize, Duration targetDuration) {
+		return new PartitionSizer(DEFAULT_INITIAL_SIZE, minSize, maxSize, targetDuration);
+	}
+
+	/**
+	 * Returns a sizer which always uses the given size
+	 * @param size number of files per transaction
+	 */
+	public static PartitionSizer fixed(int size) {
+		return new PartitionSizer(size, size, size, Duration.ZERO);
+	}
+
+	/**
+	 * Records a committed partition and adapts the size of the next one
+	 */
+	void record(Partition partition) {
+		partitions.add(partition);
+		if (minSize == maxSize || partition.size() < size) {
+			// fixed size or last partition
+			return;
+		}
+		long idealSize = partition.filesPerSecond() * targetDuration.toMillis() / 1000;
+		long nextSize = Math.max(size / MAX_GROWTH, Math.min(size * MAX_GROWTH, idealSize));
+		int newSize = (int) Math.max(minSize, Math.min(maxSize, nextSize));
+		if (newSize != size) {
+			logger.debug(String.format("Partition size changed: %d -> %d (%d files/s, commit %dms)", size, newSize, partition.filesPerSecond(), partition.commitMillis()));
+			size = newSize;
+		}
+	}
+
+	/**
+	 * Returns the recorded partitions
+	 */
+	public List<Partition> getPartitions() {
+		return Collections.unmodifiableList(partitions);
+	}
+}
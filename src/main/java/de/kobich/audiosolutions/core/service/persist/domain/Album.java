@@ -3,7 +3,11 @@ package de.kobich.audiosolutions.core.service.persist.domain;
 import java.util.Date;
 import java.util.Optional;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import de.kobich.audiosolutions.core.service.AudioDataChange;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -11,10 +15,12 @@ import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.NamedAttributeNode;
 import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
@@ -29,7 +35,9 @@ import lombok.ToString;
  * Represents an album.
  */
 @Entity
-@Table(name="album")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name="album", indexes=@Index(name="IDX_album_name_medium", columnList="name, medium_id"))
 @NamedEntityGraph(
 		name = Album.GRAPH,
 		includeAllAttributes = true,
@@ -44,7 +52,8 @@ public class Album {
 	public static final String GRAPH = "graph.album";
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "album_seq")
+	@SequenceGenerator(name = "album_seq", sequenceName = "album_seq", allocationSize = 50)
 	@Setter(AccessLevel.PROTECTED)
 	@EqualsAndHashCode.Include
 	private Long id;
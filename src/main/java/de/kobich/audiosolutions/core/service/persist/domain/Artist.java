@@ -1,10 +1,15 @@
 package de.kobich.audiosolutions.core.service.persist.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import lombok.AccessLevel;
@@ -18,6 +23,8 @@ import lombok.ToString;
  * Represents an artist.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name="artist", uniqueConstraints=@UniqueConstraint(name="UK_artist", columnNames={"name"}))
 @Getter
 @Setter
@@ -26,7 +33,8 @@ import lombok.ToString;
 @ToString(onlyExplicitlyIncluded = true)
 public class Artist {
 	@Id
-	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "artist_seq")
+	@SequenceGenerator(name = "artist_seq", sequenceName = "artist_seq", allocationSize = 50)
 	@Setter(AccessLevel.PROTECTED)
 	@EqualsAndHashCode.Include
 	private Long id;
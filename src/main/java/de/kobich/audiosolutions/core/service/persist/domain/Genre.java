@@ -1,10 +1,15 @@
 package de.kobich.audiosolutions.core.service.persist.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
@@ -17,6 +22,8 @@ import lombok.ToString;
  * Represents a genre.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 //@Table(name="genre", uniqueConstraints=@UniqueConstraint(name="UK_genre", columnNames={"name"}))
 @Table(name="genre")
 @Getter
@@ -26,7 +33,8 @@ import lombok.ToString;
 @ToString(onlyExplicitlyIncluded = true)
 public class Genre {
 	@Id
-	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "genre_seq")
+	@SequenceGenerator(name = "genre_seq", sequenceName = "genre_seq", allocationSize = 50)
 	@Setter(AccessLevel.PROTECTED)
 	@EqualsAndHashCode.Include
 	private long id;
@@ -2,11 +2,16 @@ package de.kobich.audiosolutions.core.service.persist.domain;
 
 import java.util.Date;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
@@ -22,6 +27,8 @@ import lombok.ToString;
  * Represents a medium (e.g. a compact disk).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name="medium", uniqueConstraints=@UniqueConstraint(name="UK_medium", columnNames={"name"}))
 @Getter
 @Setter
@@ -30,7 +37,8 @@ import lombok.ToString;
 @ToString(onlyExplicitlyIncluded = true)
 public class Medium {
 	@Id
-	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "medium_seq")
+	@SequenceGenerator(name = "medium_seq", sequenceName = "medium_seq", allocationSize = 50)
 	@Setter(AccessLevel.PROTECTED)
 	@EqualsAndHashCode.Include
 	private Long id;
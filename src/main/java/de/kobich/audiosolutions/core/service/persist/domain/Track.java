@@ -18,6 +18,7 @@ import jakarta.persistence.ManyToOne;
 import jakarta.persistence.NamedAttributeNode;
 import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.NamedSubgraph;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
@@ -56,7 +57,8 @@ public class Track {
 	public static final String GRAPH = "graph.track";
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_seq")
+	@SequenceGenerator(name = "track_seq", sequenceName = "track_seq", allocationSize = 50)
 	@Setter(AccessLevel.PROTECTED)
 	@EqualsAndHashCode.Include
 	private Long id;
@@ -0,0 +1,14 @@
+package de.kobich.audiosolutions.core.service.persist.domain;
+
+/**
+ * Names of a track and its artist, album, medium and genre as indexed by the text search.
+ * It is loaded by one flat query without managed entities (see {@link #SELECT}).
+ */
+public record TrackIndexEntry(Long id, String name, Long artistId, String artistName, Long albumId, String albumName, Long mediumId, String mediumName, Long genreId, String genreName) {
+	/**
+	 * Selects the entries of the tracks with alias t: a where clause can be appended
+	 */
+	public static final String SELECT = "SELECT new de.kobich.audiosolutions.core.service.persist.domain.TrackIndexEntry("
+			+ "t.id, t.name, t.artist.id, t.artist.name, t.album.id, t.album.name, t.album.medium.id, t.album.medium.name, t.genre.id, t.genre.name) "
+			+ "FROM Track t ";
+}
@@ -0,0 +1,31 @@
+package de.kobich.audiosolutions.core.service.persist.domain;
+
+import java.io.File;
+import java.util.Date;
+
+import de.kobich.audiosolutions.core.service.RatingType;
+
+/**
+ * Read-only view of a track including its artist, album, medium and genre.
+ * It is loaded by one flat query without managed entities (see {@link #SELECT}).
+ */
+public record TrackView(Long id, String name, String diskName, int no, String format, String description, String filePath, String filePathOnMedium, RatingType rating,
+		String artistName, String artistDescription, Long albumId, String albumName, String albumDescription, Date albumPublication, String mediumName, String genreName) {
+	/**
+	 * Selects the views of the tracks with alias t: a where clause can be appended
+	 */
+	public static final String SELECT = "SELECT new de.kobich.audiosolutions.core.service.persist.domain.TrackView("
+			+ "t.id, t.name, t.diskName, t.no, t.format, t.description, t.filePath, t.filePathOnMedium, t.rating, "
+			+ "t.artist.name, t.artist.description, t.album.id, t.album.name, t.album.description, t.album.publication, t.album.medium.name, t.genre.name) "
+			+ "FROM Track t ";
+
+	public static TrackView of(Track track) {
+		Album album = track.getAlbum();
+		return new TrackView(track.getId(), track.getName(), track.getDiskName(), track.getNo(), track.getFormat(), track.getDescription(), track.getFilePath(), track.getFilePathOnMedium(), track.getRating(),
+				track.getArtist().getName(), track.getArtist().getDescription(), album.getId(), album.getName(), album.getDescription(), album.getPublication(), album.getMedium().getName(), track.getGenre().getName());
+	}
+
+	public File getFile() {
+		return new File(filePath);
+	}
+}
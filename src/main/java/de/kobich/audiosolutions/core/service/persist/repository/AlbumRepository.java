@@ -1,11 +1,14 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.ListCrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Propagation;
@@ -13,12 +16,19 @@ import org.springframework.transaction.annotation.Transactional;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+import jakarta.persistence.QueryHint;
 
 @Transactional(propagation = Propagation.MANDATORY)
 public interface AlbumRepository extends ListCrudRepository<Album, Long> {
 	static interface AlbumName {
 		String getName();
 	}
+	static interface AlbumArtistCount {
+		Long getAlbumId();
+		Long getArtistId();
+		long getArtistCount();
+		Long getMinArtistId();
+	}
 	
 //	@Query("SELECT o FROM Album o LEFT JOIN Track t WHERE t IS NULL")
 	@Query("SELECT o FROM Album o WHERE o.id IN (SELECT o.id FROM Album o LEFT JOIN Track t ON o.id = t.album.id WHERE t IS NULL)")
@@ -27,14 +37,44 @@ public interface AlbumRepository extends ListCrudRepository<Album, Long> {
 	@Modifying
 	@Query("DELETE FROM Album o WHERE o.id IN (SELECT o.id FROM Album o LEFT JOIN Track t ON o.id = t.album.id WHERE t IS NULL)")
 	void deleteAllWithoutTrack();
+	
+	/**
+	 * Deletes the given albums if they have no tracks
+	 */
+	@Modifying
+	@Query("DELETE FROM Album o WHERE o.id IN (:ids) AND NOT EXISTS (SELECT t.id FROM Track t WHERE t.album.id = o.id)")
+	int deleteAllWithoutTrackByIdIn(@Param("ids") Collection<Long> ids);
 
 //	Optional<Album> findFirstByNameAndMedium(String name, Medium medium);
 	List<Album> findAllByNameAndMedium(String name, Medium medium);
 	
+	// called for each album while persisting: name and medium of persisted albums are not changed meanwhile, so the persistence context is not flushed (dirty check of all entities)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
 	Optional<Album> findByIdAndNameAndMedium(Long id, String name, Medium medium);
 	
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	<T> List<T> findAllByNameLikeIgnoreCaseOrderByName(String name, Class<T> type);
 	
+	/**
+	 * Returns the current artist, the count of distinct track artists and the track artist with the lowest ID for each album 
+	 */
+	@Transactional(readOnly = true)
+	@Query("SELECT a.id AS albumId, a.artist.id AS artistId, COUNT(DISTINCT t.artist.id) AS artistCount, MIN(t.artist.id) AS minArtistId FROM Track t INNER JOIN t.album a WHERE a.id IN (:albumIds) GROUP BY a.id, a.artist.id")
+	List<AlbumArtistCount> countArtistsByAlbumIds(@Param("albumIds") Collection<Long> albumIds);
+	
+	/**
+	 * Sets the only track artist as album artist
+	 */
+	@Modifying
+	// only the album table is changed: second-level cache of other entities stays valid
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "album"))
+	@Query(value="UPDATE album a SET artist_id = (SELECT MIN(t.artist_id) FROM track t WHERE t.album_id = a.id) WHERE a.id IN (:albumIds)", nativeQuery=true)
+	int updateArtistByTracks(@Param("albumIds") Collection<Long> albumIds);
+	
+	@Modifying
+	@Query("UPDATE Album a SET a.artist = NULL WHERE a.id IN (:albumIds)")
+	int removeArtist(@Param("albumIds") Collection<Long> albumIds);
+	
 	@Transactional(readOnly = true)
 	@Query("SELECT count(DISTINCT o) FROM Album o INNER JOIN Medium m ON o.medium.id=m.id WHERE o.medium IN (:mediums)")
 	long countByMediums(@Param("mediums") Set<Medium> mediums);
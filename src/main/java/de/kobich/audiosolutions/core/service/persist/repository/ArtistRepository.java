@@ -1,11 +1,14 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.ListCrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Propagation;
@@ -14,6 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+import jakarta.persistence.QueryHint;
 
 @Transactional(propagation = Propagation.MANDATORY)
 public interface ArtistRepository extends ListCrudRepository<Artist, Long> {
@@ -30,14 +34,26 @@ public interface ArtistRepository extends ListCrudRepository<Artist, Long> {
 	@Query("DELETE FROM Artist o WHERE o.id IN (SELECT o.id FROM Artist o LEFT JOIN Track t ON o.id = t.artist.id WHERE t IS NULL)")
 	void deleteAllWithoutTrack();
 	
+	/**
+	 * Deletes the given artists if they have no tracks
+	 */
+	@Modifying
+	@Query("DELETE FROM Artist o WHERE o.id IN (:ids) AND NOT EXISTS (SELECT t.id FROM Track t WHERE t.artist.id = o.id)")
+	int deleteAllWithoutTrackByIdIn(@Param("ids") Collection<Long> ids);
+	
 	@Transactional(readOnly = true)
 	@Query("SELECT o FROM Artist o INNER JOIN Track t ON o.id = t.artist.id INNER JOIN Album a ON t.album.id = a.id WHERE a = :album")
 	List<Artist> findAllByAlbum(@Param("album") Album album);
 	
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	Optional<Artist> findFirstByName(String name);
 
+	List<Artist> findAllByNameIn(Collection<String> names);
+
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	List<Artist> findAllByNameLikeIgnoreCase(String name);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	<T> List<T> findAllByNameLikeIgnoreCaseOrderByName(String name, Class<T> type);
 
 	@Transactional(readOnly = true)
@@ -1,17 +1,21 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Genre;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+import jakarta.persistence.QueryHint;
 
 //@Transactional(propagation = Propagation.MANDATORY)
 public interface GenreRepository extends CrudRepository<Genre, Long> {
@@ -26,9 +30,20 @@ public interface GenreRepository extends CrudRepository<Genre, Long> {
 //	@Query("DELETE FROM Genre o WHERE o.id NOT IN (SELECT t.genre.id FROM Track t)")
 	@Query("DELETE FROM Genre o WHERE o.id IN (SELECT o.id FROM Genre o LEFT JOIN Track t ON o.id = t.genre.id WHERE t IS NULL)")
 	void deleteAllWithoutTrack();
+	
+	/**
+	 * Deletes the given genres if they have no tracks
+	 */
+	@Modifying
+	@Query("DELETE FROM Genre o WHERE o.id IN (:ids) AND NOT EXISTS (SELECT t.id FROM Track t WHERE t.genre.id = o.id)")
+	int deleteAllWithoutTrackByIdIn(@Param("ids") Collection<Long> ids);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	Optional<Genre> findFirstByName(String name);
+
+	List<Genre> findAllByNameIn(Collection<String> names);
 	
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	<T> List<T> findAllByNameLikeIgnoreCaseOrderByName(String name, Class<T> type);
 
 	@Transactional(readOnly = true)
@@ -1,15 +1,20 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+import jakarta.persistence.QueryHint;
 
 @Transactional(propagation = Propagation.MANDATORY)
 public interface MediumRepository extends ListCrudRepository<Medium, Long> {
@@ -24,10 +29,22 @@ public interface MediumRepository extends ListCrudRepository<Medium, Long> {
 //	@Query("DELETE FROM Medium o WHERE o.id NOT IN (SELECT t.album.medium.id FROM Track t)")
 	@Query("DELETE FROM Medium o WHERE o.id IN (SELECT o.id FROM Medium o LEFT JOIN Album a ON o.id = a.medium.id WHERE a IS NULL)")
 	void deleteAllWithoutTrack();
+	
+	/**
+	 * Deletes the given media if they have no albums
+	 */
+	@Modifying
+	@Query("DELETE FROM Medium o WHERE o.id IN (:ids) AND NOT EXISTS (SELECT a.id FROM Album a WHERE a.medium.id = o.id)")
+	int deleteAllWithoutTrackByIdIn(@Param("ids") Collection<Long> ids);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	Optional<Medium> findFirstByName(String name);
+
+	List<Medium> findAllByNameIn(Collection<String> names);
 	
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	List<Medium> findAllByNameLikeIgnoreCase(String name);
 	
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	<T> List<T> findAllByNameLikeIgnoreCaseOrderByName(String name, Class<T> type);
 }
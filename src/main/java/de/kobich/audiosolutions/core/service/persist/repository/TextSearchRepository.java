@@ -4,6 +4,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
 
 import org.apache.log4j.Logger;
 import org.hibernate.jpa.AvailableHints;
@@ -27,6 +32,9 @@ import jakarta.persistence.TypedQuery;
 @Transactional(rollbackFor=AudioException.class, readOnly = true)
 public class TextSearchRepository {
 	private static final Logger logger = Logger.getLogger(TextSearchRepository.class);
+	private static final String ARTISTS_BY_IDS = "SELECT ar FROM Artist ar WHERE ar.id IN (:ids)";
+	private static final String ALBUMS_BY_IDS = "SELECT a FROM Album a WHERE a.id IN (:ids)";
+	private static final String TRACKS_BY_IDS = "SELECT t FROM Track t WHERE t.id IN (:ids)";
 	@PersistenceContext
 	private EntityManager entityManager;
 	
@@ -97,6 +105,41 @@ public class TextSearchRepository {
 		return tracks;
 	}
 	
+	/**
+	 * Loads the artists in the order of the given IDs (e.g. found by the text search index)
+	 */
+	public List<Artist> findArtistsByIds(List<Long> ids) {
+		return findAllByIds(ARTISTS_BY_IDS, Artist.class, null, ids, Artist::getId);
+	}
+	
+	/**
+	 * Loads the albums in the order of the given IDs (e.g. found by the text search index)
+	 */
+	public List<Album> findAlbumsByIds(List<Long> ids) {
+		return findAllByIds(ALBUMS_BY_IDS, Album.class, Album.GRAPH, ids, Album::getId);
+	}
+	
+	/**
+	 * Loads the tracks in the order of the given IDs (e.g. found by the text search index)
+	 */
+	public List<Track> findTracksByIds(List<Long> ids) {
+		return findAllByIds(TRACKS_BY_IDS, Track.class, Track.GRAPH, ids, Track::getId);
+	}
+	
+	private <T> List<T> findAllByIds(String queryString, Class<T> type, @Nullable String graphName, List<Long> ids, Function<T, Long> idFunction) {
+		if (ids.isEmpty()) {
+			return List.of();
+		}
+		TypedQuery<T> sqlQuery = entityManager.createQuery(queryString, type);
+		if (graphName != null) {
+			sqlQuery.setHint(AvailableHints.HINT_SPEC_FETCH_GRAPH, entityManager.createEntityGraph(graphName));
+		}
+		sqlQuery.setParameter("ids", ids);
+		Map<Long, T> entities = sqlQuery.getResultList().stream().collect(Collectors.toMap(idFunction, Function.identity(), (e1, e2) -> e1));
+		// entities deleted in the meantime are missing
+		return ids.stream().map(entities::get).filter(Objects::nonNull).toList();
+	}
+	
 	private StringBuilder createSimpleWhereClause(AudioTextSearchTokens tokens, Map<String, String> parameters, String jpql) {
 		final String condition = " lower("+jpql+") LIKE lower(:%s)";
 		final String notCondition = " lower("+jpql+") NOT LIKE lower(:%s)";
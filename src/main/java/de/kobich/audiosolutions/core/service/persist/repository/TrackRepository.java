@@ -1,13 +1,18 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.ListCrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,25 +21,64 @@ import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackIndexEntry;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackView;
+import jakarta.persistence.QueryHint;
 
 public interface TrackRepository extends ListCrudRepository<Track, Long> { //, ListQueryByExampleExecutor<Track> {
 	static interface TrackName {
 		String getName();
 	}
+	static interface TrackAlbum {
+		String getFilePath();
+		Album getAlbum();
+	}
+	static interface TrackReferences {
+		Long getArtistId();
+		Long getGenreId();
+		Long getAlbumId();
+		Long getMediumId();
+	}
 	
 	@Transactional(readOnly = true)
 	@Query("SELECT t FROM Track t WHERE t.album.name = :albumName AND t.artist = :artist AND t.album.medium = :medium")
 	Page<Track> findByArtistAndAlbumAndMedium(@Param("artist") Artist artist, @Param("albumName") String albumName, @Param("medium") Medium medium, Pageable page);
 	
+	// called for each folder before anything is changed: no flush (dirty check of all loaded albums) required
 	@Transactional(readOnly = true)
-	@Query("SELECT t FROM Track t WHERE t.album.name = :albumName AND t.album.medium = :medium AND t.filePath LIKE :filePath ESCAPE :escape")
-	@EntityGraph(value = Track.GRAPH)
-	Page<Track> findByAlbumAndFilePath(@Param("albumName") String albumName, @Param("medium") Medium medium, @Param("filePath") String filePathWithWildcards, @Param("escape") char escape, Pageable page);
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "COMMIT"))
+	@Query("SELECT t.filePath AS filePath, a AS album FROM Track t INNER JOIN t.album a INNER JOIN FETCH a.medium LEFT JOIN FETCH a.artist WHERE t.filePath LIKE :filePath ESCAPE :escape")
+	List<TrackAlbum> findTrackAlbumsByFilePath(@Param("filePath") String filePathWithWildcards, @Param("escape") char escape);
 
 	//select t from Track t where t.filePath = :filePath
 	@Transactional(readOnly = true)
 	Optional<Track> findFirstByFilePath(String filePath);
 	
+	@Transactional(readOnly = true)
+	@EntityGraph(Track.GRAPH)
+	@Query("SELECT t FROM Track t WHERE t.id IN (:ids)")
+	List<Track> findAllByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Transactional(readOnly = true)
+	@Query("SELECT t.artist.id AS artistId, t.genre.id AS genreId, t.album.id AS albumId, t.album.medium.id AS mediumId FROM Track t WHERE t.id IN (:ids)")
+	List<TrackReferences> findReferencesByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Modifying
+	@Query("DELETE FROM Track t WHERE t.id IN (:ids)")
+	int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Transactional(readOnly = true)
+	@Query(TrackIndexEntry.SELECT + "ORDER BY t.id")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackIndexEntry> streamIndexEntries();
+	@Transactional(readOnly = true)
+	@Query(TrackIndexEntry.SELECT + "WHERE t.id IN (:ids)")
+	List<TrackIndexEntry> findIndexEntriesByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Transactional(readOnly = true)
+	@Query("SELECT t.filePath FROM Track t WHERE t.filePath IN (:filePaths)")
+	List<String> findFilePathsIn(@Param("filePaths") Collection<String> filePaths);
+	
 	@Transactional(readOnly = true)
 	@Query("SELECT t FROM Track t WHERE t.artist.name IN (:artistNames)")
 	List<Track> findByArtistNames(@Param("artistNames") Set<String> artistNames);
@@ -53,12 +97,61 @@ public interface TrackRepository extends ListCrudRepository<Track, Long> { //, L
 	@Query("SELECT t FROM Track t WHERE t IN (:tracks)")
 	List<Track> findByTracks(@Param("tracks") Set<Track> tracks);
 	
+	// read-only views (without managed entities)
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.artist.name IN (:artistNames)")
+	List<TrackView> findViewsByArtistNames(@Param("artistNames") Set<String> artistNames);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.album.medium.name IN (:mediumNames)")
+	List<TrackView> findViewsByMediumNames(@Param("mediumNames") Set<String> mediumNames);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.artist IN (:artists)")
+	List<TrackView> findViewsByArtists(@Param("artists") Set<Artist> artists);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.album IN (:albums)")
+	List<TrackView> findViewsByAlbums(@Param("albums") Set<Album> albums);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t IN (:tracks)")
+	List<TrackView> findViewsByTracks(@Param("tracks") Set<Track> tracks);
+	
+	// streaming variants: must be consumed within a transaction and closed afterwards
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.artist.name IN (:artistNames)")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackView> streamViewsByArtistNames(@Param("artistNames") Set<String> artistNames);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.album.medium.name IN (:mediumNames)")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackView> streamViewsByMediumNames(@Param("mediumNames") Set<String> mediumNames);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.artist IN (:artists)")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackView> streamViewsByArtists(@Param("artists") Set<Artist> artists);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t.album IN (:albums)")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackView> streamViewsByAlbums(@Param("albums") Set<Album> albums);
+	@Transactional(readOnly = true)
+	@Query(TrackView.SELECT + "WHERE t IN (:tracks)")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<TrackView> streamViewsByTracks(@Param("tracks") Set<Track> tracks);
+	
 	@Transactional(readOnly = true)
 	<T> List<T> findAllByNameLikeIgnoreCaseOrderByName(String name, Class<T> type);
 	
 	@Transactional(readOnly = true)
 	@Query("SELECT t.filePath FROM Track t WHERE t.filePath LIKE :filePath ESCAPE :escape")
 	List<String> findFilePathLike(@Param("filePath") String filePathWithWildcards, @Param("escape") char escape);
+	@Transactional(readOnly = true)
+	@Query("SELECT t.filePath FROM Track t WHERE t.filePath LIKE :filePath ESCAPE :escape")
+	@QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + TrackSearchRepository.FETCH_SIZE))
+	Stream<String> streamFilePathLike(@Param("filePath") String filePathWithWildcards, @Param("escape") char escape);
+	@Transactional(readOnly = true)
+	@Query("SELECT t.filePath FROM Track t WHERE t.filePath LIKE :filePath ESCAPE :escape AND t.filePath NOT LIKE :excludedFilePath ESCAPE :escape")
+	List<String> findFilePathLikeAndNotLike(@Param("filePath") String filePathWithWildcards, @Param("excludedFilePath") String excludedFilePathWithWildcards, @Param("escape") char escape);
+	@Transactional(readOnly = true)
+	@Query("SELECT count(t) FROM Track t WHERE t.filePath LIKE :filePath ESCAPE :escape")
+	long countFilePathLike(@Param("filePath") String filePathWithWildcards, @Param("escape") char escape);
 
 	@Transactional(readOnly = true)
 	@Query("SELECT count(DISTINCT t) FROM Track t INNER JOIN Album a ON t.album.id=a.id INNER JOIN Medium m ON a.medium.id=m.id WHERE a.medium IN (:mediums)")
@@ -1,6 +1,7 @@
 package de.kobich.audiosolutions.core.service.persist.repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 import org.hibernate.jpa.AvailableHints;
@@ -8,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackView;
 import de.kobich.audiosolutions.core.service.search.AudioSearchQuery;
 import de.kobich.commons.utils.SQLUtils;
 import jakarta.persistence.EntityGraph;
@@ -18,11 +20,44 @@ import jakarta.persistence.TypedQuery;
 @Repository
 public class TrackSearchRepository {
 	private static final Logger logger = Logger.getLogger(TrackSearchRepository.class);
+	public static final int FETCH_SIZE = 500;
 	@PersistenceContext
 	private EntityManager entityManager;
 
 	public List<Track> findByQuery(AudioSearchQuery query) {
-		StringBuilder queryString = new StringBuilder("SELECT t FROM Track t");
+		TypedQuery<Track> sqlQuery = createQuery(query, "SELECT t FROM Track t", Track.class);
+		EntityGraph<?> graph = entityManager.createEntityGraph(Track.GRAPH);
+		sqlQuery.setHint(AvailableHints.HINT_SPEC_FETCH_GRAPH, graph);
+		List<Track> tracks = sqlQuery.getResultList();
+		logger.debug("Found " + tracks.size() + " tracks for query: " + query);
+		return tracks;
+	}
+
+	/**
+	 * Returns read-only views of the tracks (without managed entities)
+	 * @param query
+	 * @return
+	 */
+	public List<TrackView> findViewsByQuery(AudioSearchQuery query) {
+		TypedQuery<TrackView> sqlQuery = createQuery(query, TrackView.SELECT, TrackView.class);
+		List<TrackView> tracks = sqlQuery.getResultList();
+		logger.debug("Found " + tracks.size() + " tracks for query: " + query);
+		return tracks;
+	}
+
+	/**
+	 * Returns read-only views of the tracks without loading all of them at once: the stream must be consumed within the transaction and closed afterwards
+	 * @param query
+	 * @return
+	 */
+	public Stream<TrackView> streamViewsByQuery(AudioSearchQuery query) {
+		TypedQuery<TrackView> sqlQuery = createQuery(query, TrackView.SELECT, TrackView.class);
+		sqlQuery.setHint(AvailableHints.HINT_FETCH_SIZE, FETCH_SIZE);
+		return sqlQuery.getResultStream();
+	}
+
+	private <T> TypedQuery<T> createQuery(AudioSearchQuery query, String select, Class<T> resultClass) {
+		StringBuilder queryString = new StringBuilder(select);
 		String combineString = " where ";
 		if (StringUtils.hasText(query.getMediumName())) {
 			queryString.append(combineString + "lower(t.album.medium.name) like lower(:mediumName)");
@@ -69,9 +104,7 @@ public class TrackSearchRepository {
 			combineString = " and ";
 		}
 		
-		TypedQuery<Track> sqlQuery = entityManager.createQuery(queryString.toString(), Track.class);
-		EntityGraph<?> graph = entityManager.createEntityGraph(Track.GRAPH);
-		sqlQuery.setHint(AvailableHints.HINT_SPEC_FETCH_GRAPH, graph);
+		TypedQuery<T> sqlQuery = entityManager.createQuery(queryString.toString(), resultClass);
 		
 		if (StringUtils.hasText(query.getMediumName())) {
 			sqlQuery.setParameter("mediumName", SQLUtils.escapeLikeParam(query.getMediumName(), true, true));
@@ -107,10 +140,7 @@ public class TrackSearchRepository {
 			sqlQuery.setParameter("trackId", query.getTrackId());
 		}
 //		query.setMaxResults(AudioSolutions.getInstance().getMaxResults());
-
-		List<Track> tracks = sqlQuery.getResultList();
-		logger.debug("Found " + tracks.size() + " tracks for query: " + queryString.toString());
-		return tracks;
+		return sqlQuery;
 	}
 
 }
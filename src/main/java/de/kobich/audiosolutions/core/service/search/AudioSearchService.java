@@ -2,9 +2,12 @@ package de.kobich.audiosolutions.core.service.search;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
@@ -21,6 +24,7 @@ import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Medium;
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackView;
 import de.kobich.audiosolutions.core.service.persist.repository.AlbumRepository;
 import de.kobich.audiosolutions.core.service.persist.repository.AlbumRepository.AlbumName;
 import de.kobich.audiosolutions.core.service.persist.repository.ArtistRepository;
@@ -60,6 +64,8 @@ public class AudioSearchService {
 	private MediumRepository mediumRepository;
 	@Autowired
 	private AudioTextSearchService textSearchService;
+	@Autowired
+	private AudioTextSearchIndex searchIndex;
 	
 	/**
 	 * Searches for tracks
@@ -71,7 +77,7 @@ public class AudioSearchService {
 		ProgressSupport progressSupport = new ProgressSupport(monitor);
 		progressSupport.monitorBeginTask("Searching tracks...");
 		
-		List<Track> tracks = trackSearchRepository.findByQuery(query);
+		List<TrackView> tracks = trackSearchRepository.findViewsByQuery(query);
 		
 		Set<FileDescriptor> fileDescriptors = convertTracks(tracks, progressSupport);
 		
@@ -81,6 +87,21 @@ public class AudioSearchService {
 		return fileDescriptors;
 	}
 	
+	/**
+	 * Searches for tracks and passes them one by one to the consumer: the memory usage does not depend on the number of tracks
+	 * @param query
+	 * @param consumer
+	 * @param monitor
+	 * @return number of found tracks
+	 */
+	public int search(AudioSearchQuery query, Consumer<FileDescriptor> consumer, IServiceProgressMonitor monitor) {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Searching tracks...");
+		int count = consumeTracks(trackSearchRepository.streamViewsByQuery(query), consumer, progressSupport);
+		progressSupport.monitorEndTask("Searching finished");
+		return count;
+	}
+	
 	/**
 	 * Searches for tracks
 	 * @param artistNames
@@ -93,7 +114,7 @@ public class AudioSearchService {
 		ProgressSupport progressSupport = new ProgressSupport(monitor);
 		progressSupport.monitorBeginTask("Searching tracks...");
 		
-		List<Track> tracks = trackRepository.findByArtistNames(artistNames);
+		List<TrackView> tracks = trackRepository.findViewsByArtistNames(artistNames);
 		Set<FileDescriptor> fileDescriptors = convertTracks(tracks, progressSupport);
 		
 		// monitor end
@@ -101,24 +122,40 @@ public class AudioSearchService {
 		
 		return fileDescriptors;
 	}
+	
+	/**
+	 * Searches for tracks and passes them one by one to the consumer
+	 * @param artistNames
+	 * @param consumer
+	 * @param monitor
+	 * @return number of found tracks
+	 */
+	public int searchByArtists(Set<String> artistNames, Consumer<FileDescriptor> consumer, IServiceProgressMonitor monitor) {
+		Reject.ifEmpty(artistNames);
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Searching tracks...");
+		int count = consumeTracks(trackRepository.streamViewsByArtistNames(artistNames), consumer, progressSupport);
+		progressSupport.monitorEndTask("Searching finished");
+		return count;
+	}
 
 	public Set<FileDescriptor> searchByText(String text, AudioAttribute attribute, IServiceProgressMonitor monitor) throws AudioException {
 		ProgressSupport progressSupport = new ProgressSupport(monitor);
 		progressSupport.monitorBeginTask("Searching tracks...");
 
-		List<Track> foundedTracks;
+		List<TrackView> foundedTracks;
 		switch (attribute) {
 			case ARTIST:
 				List<Artist> artists = textSearchService.searchArtists(text, Integer.MAX_VALUE);
-				foundedTracks = trackRepository.findByArtists(new HashSet<>(artists));
+				foundedTracks = trackRepository.findViewsByArtists(new HashSet<>(artists));
 				break;
 			case ALBUM:
 				List<Album> albums = textSearchService.searchAlbums(text, Integer.MAX_VALUE);
-				foundedTracks = trackRepository.findByAlbums(new HashSet<>(albums));
+				foundedTracks = trackRepository.findViewsByAlbums(new HashSet<>(albums));
 				break;
 			case TRACK:
 				List<Track> tracks = textSearchService.searchTracks(text, Integer.MAX_VALUE);
-				foundedTracks = trackRepository.findByTracks(new HashSet<>(tracks));
+				foundedTracks = trackRepository.findViewsByTracks(new HashSet<>(tracks));
 				break;
 			default:
 				throw new IllegalStateException("Illegal attribute: " + attribute);
@@ -128,6 +165,41 @@ public class AudioSearchService {
 		progressSupport.monitorEndTask("Searching finished");
 		return fileDescriptors;
 	}
+	
+	/**
+	 * Searches for tracks and passes them one by one to the consumer
+	 * @param text
+	 * @param attribute
+	 * @param consumer
+	 * @param monitor
+	 * @return number of found tracks
+	 */
+	public int searchByText(String text, AudioAttribute attribute, Consumer<FileDescriptor> consumer, IServiceProgressMonitor monitor) throws AudioException {
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Searching tracks...");
+
+		Stream<TrackView> foundedTracks;
+		switch (attribute) {
+			case ARTIST:
+				List<Artist> artists = textSearchService.searchArtists(text, Integer.MAX_VALUE);
+				foundedTracks = trackRepository.streamViewsByArtists(new HashSet<>(artists));
+				break;
+			case ALBUM:
+				List<Album> albums = textSearchService.searchAlbums(text, Integer.MAX_VALUE);
+				foundedTracks = trackRepository.streamViewsByAlbums(new HashSet<>(albums));
+				break;
+			case TRACK:
+				List<Track> tracks = textSearchService.searchTracks(text, Integer.MAX_VALUE);
+				foundedTracks = trackRepository.streamViewsByTracks(new HashSet<>(tracks));
+				break;
+			default:
+				throw new IllegalStateException("Illegal attribute: " + attribute);
+		}
+		int count = consumeTracks(foundedTracks, consumer, progressSupport);
+		
+		progressSupport.monitorEndTask("Searching finished");
+		return count;
+	}
 
 	/**
 	 * Searches for tracks
@@ -142,7 +214,7 @@ public class AudioSearchService {
 		ProgressSupport progressSupport = new ProgressSupport(monitor);
 		progressSupport.monitorBeginTask("Searching tracks...");
 		
-		List<Track> tracks = trackRepository.findByMediumNames(mediumNames);
+		List<TrackView> tracks = trackRepository.findViewsByMediumNames(mediumNames);
 		Set<FileDescriptor> fileDescriptors = convertTracks(tracks, progressSupport);
 		
 		// monitor end
@@ -151,24 +223,62 @@ public class AudioSearchService {
 		return fileDescriptors;
 	}
 	
-	private Set<FileDescriptor> convertTracks(List<Track> tracks, ProgressSupport progressSupport) {
+	/**
+	 * Searches for tracks and passes them one by one to the consumer
+	 * @param mediumNames
+	 * @param consumer
+	 * @param monitor
+	 * @return number of found tracks
+	 */
+	public int searchByMediums(Set<String> mediumNames, Consumer<FileDescriptor> consumer, IServiceProgressMonitor monitor) {
+		Reject.ifEmpty(mediumNames);
+		ProgressSupport progressSupport = new ProgressSupport(monitor);
+		progressSupport.monitorBeginTask("Searching tracks...");
+		int count = consumeTracks(trackRepository.streamViewsByMediumNames(mediumNames), consumer, progressSupport);
+		progressSupport.monitorEndTask("Searching finished");
+		return count;
+	}
+	
+	private Set<FileDescriptor> convertTracks(List<TrackView> tracks, ProgressSupport progressSupport) {
 		Set<FileDescriptor> fileDescriptors = new HashSet<FileDescriptor>();
-		for (Track track : tracks) {
-			logger.debug("Create file descriptor: " + track.getName());
-			File file = track.getFile();
-			FileDescriptor fileDescriptor = new FileDescriptor(file, track.getFilePathOnMedium());
-			AudioData audioData = new AudioData(track);
-			fileDescriptor.setMetaData(audioData);
-			
+		for (TrackView track : tracks) {
+			FileDescriptor fileDescriptor = convertTrack(track);
 			fileDescriptors.add(fileDescriptor);
-			
-			ProgressData subTask = new ProgressData("Found track #" + fileDescriptors.size() + ": " + fileDescriptor.getFileName() + " \n" +
-					track.getArtist().getName() + " - " + track.getAlbum().getName());
-			progressSupport.monitorSubTask(subTask);
+			monitorTrack(track, fileDescriptor, fileDescriptors.size(), progressSupport);
 		}
 		return fileDescriptors;
 	}
 	
+	private int consumeTracks(Stream<TrackView> tracks, Consumer<FileDescriptor> consumer, ProgressSupport progressSupport) {
+		int count = 0;
+		// views are not managed: the persistence context does not grow
+		try (tracks) {
+			Iterator<TrackView> it = tracks.iterator();
+			while (it.hasNext()) {
+				TrackView track = it.next();
+				FileDescriptor fileDescriptor = convertTrack(track);
+				consumer.accept(fileDescriptor);
+				monitorTrack(track, fileDescriptor, ++count, progressSupport);
+			}
+		}
+		return count;
+	}
+	
+	private FileDescriptor convertTrack(TrackView track) {
+		logger.debug("Create file descriptor: " + track.name());
+		File file = track.getFile();
+		FileDescriptor fileDescriptor = new FileDescriptor(file, track.filePathOnMedium());
+		AudioData audioData = new AudioData(track);
+		fileDescriptor.setMetaData(audioData);
+		return fileDescriptor;
+	}
+	
+	private void monitorTrack(TrackView track, FileDescriptor fileDescriptor, int count, ProgressSupport progressSupport) {
+		ProgressData subTask = new ProgressData("Found track #" + count + ": " + fileDescriptor.getFileName() + " \n" +
+				track.artistName() + " - " + track.albumName());
+		progressSupport.monitorSubTask(subTask);
+	}
+	
 	/**
 	 * Searches for artists
 	 * @param artistName if artistName is null, all artists are returned
@@ -211,15 +321,23 @@ public class AudioSearchService {
 	}
 
 	/**
-	 * Searches for similar entity names depending on the audio attribute
+	 * Searches for similar entity names depending on the audio attribute: the distinct names containing the given name in alphabetical order.
+	 * They are looked up in the text search index if it is ready, otherwise in the database.
 	 * @param attribute the audio attribute
 	 * @param name the name to search for similar entities
 	 * @param maxNumber
 	 * @return
 	 */
 	public List<String> searchProposals(AudioAttribute attribute, String name, /*int position, */int maxNumber) {
-		List<String> proposals = findProposals(attribute, name);
-		return proposals.stream().filter(s -> !AudioData.DEFAULT_VALUE.equals(s)).limit(maxNumber).toList();
+		List<String> proposals;
+		if (searchIndex.isReady()) {
+			// the default value may be one of the proposals
+			proposals = searchIndex.findProposals(attribute, name, maxNumber + 1);
+		}
+		else {
+			proposals = findProposals(attribute, name);
+		}
+		return proposals.stream().filter(s -> !AudioData.DEFAULT_VALUE.equals(s)).distinct().limit(maxNumber).toList();
 	}
 	
 	private List<String> findProposals(AudioAttribute attribute, String name) {
@@ -0,0 +1,220 @@
+package de.kobich.audiosolutions.core.service.search;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.kobich.audiosolutions.core.AudioSolutions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs the branches of a text search (artists, albums, tracks) in parallel.
+ * Each branch runs in its own read-only transaction on a bounded pool of search threads:
+ * if all threads are busy and the queue is full, the caller runs the branch itself instead of waiting.
+ * The number of threads is set by {@link AudioSolutions#SEARCH_THREADS_PROP},
+ * {@link AudioSolutions#SEARCH_VIRTUAL_THREADS_PROP} uses virtual threads if the Java runtime supports them.
+ * <p>
+ * A search started on a channel (e.g. the search field of a view) supersedes the previous search of this channel:
+ * its branches which are not running yet are skipped, running branches are finished but their results are discarded.
+ * Running branches are not interrupted because an interrupt may close the database files.
+ * @see AudioTextSearchService#searchSimultaneously(String, int, String)
+ */
+@Service
+public class AudioTextSearchExecutor {
+	private static final Logger logger = Logger.getLogger(AudioTextSearchExecutor.class);
+	private static final int DEFAULT_THREADS = 6;
+	// queued branches per thread before the caller runs them
+	private static final int QUEUE_FACTOR = 8;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private Environment env;
+	private ThreadPoolExecutor searchExecutor;
+	private final Map<String, Search> searchesByChannel = new ConcurrentHashMap<>();
+	private final Map<Branch, BranchCounter> counters = new EnumMap<>(Branch.class);
+
+	/**
+	 * Branch of a text search
+	 */
+	public static enum Branch { ARTISTS, ALBUMS, TRACKS }
+
+	/**
+	 * Latency of a branch since the last reset
+	 * @param branch
+	 * @param count number of finished branches
+	 * @param totalMillis
+	 * @param maxMillis
+	 */
+	public static record BranchStatistics(Branch branch, long count, long totalMillis, long maxMillis) {
+		public double averageMillis() {
+			return count > 0 ? (double) totalMillis / count : 0;
+		}
+	}
+
+	private static class BranchCounter {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalMillis = new AtomicLong();
+		private final AtomicLong maxMillis = new AtomicLong();
+
+		public void add(long millis) {
+			count.incrementAndGet();
+			totalMillis.addAndGet(millis);
+			maxMillis.accumulateAndGet(millis, Math::max);
+		}
+
+		public void reset() {
+			count.set(0);
+			totalMillis.set(0);
+			maxMillis.set(0);
+		}
+	}
+
+	/**
+	 * One search with its branches
+	 */
+	public class Search implements AutoCloseable {
+		@Nullable
+		private final String channel;
+		private final List<CompletableFuture<?>> futures = new ArrayList<>();
+		private volatile boolean cancelled;
+
+		private Search(@Nullable String channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Starts a branch in a read-only transaction
+		 * @param branch
+		 * @param task
+		 * @return the result, cancelled if the search is superseded
+		 */
+		public synchronized <T> CompletableFuture<T> submit(Branch branch, Supplier<T> task) {
+			if (cancelled) {
+				CompletableFuture<T> future = new CompletableFuture<>();
+				future.cancel(false);
+				return future;
+			}
+			CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> execute(branch, task), searchExecutor);
+			futures.add(future);
+			return future;
+		}
+
+		private <T> T execute(Branch branch, Supplier<T> task) {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			StopWatch watch = StopWatch.createStarted();
+			try {
+				TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+				transactionTemplate.setReadOnly(true);
+				return transactionTemplate.execute(status -> task.get());
+			}
+			finally {
+				long millis = watch.getTime(TimeUnit.MILLISECONDS);
+				counters.get(branch).add(millis);
+				logger.info(String.format("Find %s takes %dms", branch.name().toLowerCase(), millis));
+			}
+		}
+
+		/**
+		 * Skips the branches which are not running yet and discards the results of the running ones
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			futures.forEach(f -> f.cancel(false));
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public void close() {
+			if (channel != null) {
+				searchesByChannel.remove(channel, this);
+			}
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		for (Branch branch : Branch.values()) {
+			counters.put(branch, new BranchCounter());
+		}
+		int threads = Math.max(1, env.getProperty(AudioSolutions.SEARCH_THREADS_PROP, Integer.class, DEFAULT_THREADS));
+		this.searchExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * QUEUE_FACTOR),
+				createThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+		searchExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		searchExecutor.shutdownNow();
+	}
+
+	private ThreadFactory createThreadFactory() {
+		if (env.getProperty(AudioSolutions.SEARCH_VIRTUAL_THREADS_PROP, Boolean.class, false)) {
+			try {
+				// Thread.ofVirtual().factory() is available since Java 21
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+			}
+			catch (ReflectiveOperationException exc) {
+				logger.warn("Virtual threads are not supported by this Java runtime, platform threads are used for searching");
+			}
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("audio-search-");
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	/**
+	 * Starts a search
+	 * @param channel the previous search of this channel is cancelled, null if the search cannot be superseded
+	 * @return the search which must be closed after its branches are finished
+	 */
+	public Search begin(@Nullable String channel) {
+		Search search = new Search(channel);
+		if (channel != null) {
+			Search previous = searchesByChannel.put(channel, search);
+			if (previous != null) {
+				logger.debug("Search superseded on channel " + channel);
+				previous.cancel();
+			}
+		}
+		return search;
+	}
+
+	/**
+	 * Returns the latency of each branch since the last reset
+	 */
+	public List<BranchStatistics> getStatistics() {
+		return counters.entrySet().stream().map(e -> new BranchStatistics(e.getKey(), e.getValue().count.get(), e.getValue().totalMillis.get(), e.getValue().maxMillis.get())).toList();
+	}
+
+	public void resetStatistics() {
+		counters.values().forEach(BranchCounter::reset);
+	}
+}
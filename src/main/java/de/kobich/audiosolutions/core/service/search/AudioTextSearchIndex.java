@@ -0,0 +1,979 @@
+package de.kobich.audiosolutions.core.service.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+
+import de.kobich.audiosolutions.core.AudioSolutions;
+import de.kobich.audiosolutions.core.service.AudioAttribute;
+import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.audiosolutions.core.service.persist.CatalogRevisionService;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackIndexEntry;
+import de.kobich.audiosolutions.core.service.persist.repository.TrackRepository;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchToken.SearchTokenType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * In-memory trigram index of the names of all tracks and their artists, albums, media and genres.
+ * A condition like <code>lower(name) LIKE '%token%'</code> cannot use a database index and scans the whole catalog.
+ * This index looks up the names containing all trigrams of a token and verifies them by {@link String#contains(CharSequence)},
+ * so only the IDs of the results have to be loaded from the database.
+ * Proposals are the names containing the text in alphabetical order, like the SQL query used without index.
+ * <p>
+ * The index is loaded in the background when the service is created and kept up to date by the persistence service.
+ * Its entries are stored in the data root (see {@link AudioTextSearchIndexStore}): at the next start they are read from there 
+ * instead of the database, unless their catalog revision differs from the database (see {@link CatalogRevisionService}).
+ * The files are written in the background, in the order the changes are applied to the index.
+ * As long as it is not ready (or disabled by {@link AudioSolutions#SEARCH_INDEX_PROP}), the text search uses SQL.
+ * @see AudioTextSearchService
+ */
+@Service
+public class AudioTextSearchIndex {
+	private static final Logger logger = Logger.getLogger(AudioTextSearchIndex.class);
+	private static final int REFRESH_CHUNK_SIZE = 500;
+	private static final int STORE_SHUTDOWN_SECONDS = 30;
+	/**
+	 * Track candidates are scanned in index order if the best token matches more than 1/SCAN_RATIO of all tracks
+	 */
+	private static final int SCAN_RATIO = 4;
+	@Autowired
+	private TrackRepository trackRepository;
+	@Autowired
+	private CatalogRevisionService revisionService;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private Environment env;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Object buildMonitor = new Object();
+	private ExecutorService buildExecutor;
+	// single thread: writes the index files in the order of the changes
+	private ExecutorService storeExecutor;
+	private volatile boolean ready;
+	// guarded by lock
+	private TrackTable table = new TrackTable();
+	// guarded by this: IDs of the tracks refreshed during a build, null if no build is running
+	@Nullable
+	private Set<Long> pendingTrackIds;
+	private boolean clearedWhileBuilding;
+	// guarded by this: files of the index, null if the index is only held in memory
+	@Nullable
+	private AudioTextSearchIndexStore store;
+
+	/**
+	 * Field of the tracks a token is compared with
+	 */
+	private static enum Field { ARTIST, ALBUM, TRACK, MEDIUM, GENRE, ANY }
+	private static record Condition(Field field, String value, boolean negate) {}
+	private static interface TableLoader {
+		boolean load(TrackTable table) throws Exception;
+	}
+	private static interface StoreWriter {
+		void write(AudioTextSearchIndexStore store) throws IOException;
+	}
+
+	@PostConstruct
+	public void init() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("audio-search-index-");
+		threadFactory.setDaemon(true);
+		this.buildExecutor = Executors.newSingleThreadExecutor(threadFactory);
+		CustomizableThreadFactory storeThreadFactory = new CustomizableThreadFactory("audio-search-store-");
+		storeThreadFactory.setDaemon(true);
+		this.storeExecutor = Executors.newSingleThreadExecutor(storeThreadFactory);
+		if (isEnabled()) {
+			buildExecutor.submit(this::open);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		buildExecutor.shutdownNow();
+		synchronized (this) {
+			storeExecutor.shutdown();
+		}
+		// the pending changes are written before the files are closed
+		try {
+			storeExecutor.awaitTermination(STORE_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			closeStore();
+		}
+	}
+
+	/**
+	 * Returns true if searches can be answered by this index
+	 */
+	public boolean isReady() {
+		return ready && isEnabled();
+	}
+
+	private boolean isEnabled() {
+		return env.getProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.class, true);
+	}
+
+	/**
+	 * Loads the index from the files in the data root. 
+	 * The index is built from the database if there are no files or if they do not match the database.
+	 */
+	private void open() {
+		File directory = AudioSolutions.getSearchIndexDir();
+		if (directory != null) {
+			synchronized (this) {
+				this.store = new AudioTextSearchIndexStore(directory);
+			}
+			if (replaceTable("files", this::loadFromFiles, false)) {
+				return;
+			}
+		}
+		build();
+	}
+
+	/**
+	 * Loads all tracks from the database and replaces the index.
+	 * Tracks refreshed in the meantime are reloaded afterwards.
+	 */
+	public void build() {
+		replaceTable("database", this::loadFromDatabase, true);
+	}
+
+	private boolean loadFromDatabase(TrackTable newTable) throws AudioException {
+		// read before the entries: changes committed meanwhile are newer than the table
+		newTable.revision = revisionService.getRevision();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		transactionTemplate.executeWithoutResult(status -> {
+			try (Stream<TrackIndexEntry> entries = trackRepository.streamIndexEntries()) {
+				entries.forEach(newTable::put);
+			}
+		});
+		return true;
+	}
+
+	private boolean loadFromFiles(TrackTable newTable) throws IOException, AudioException {
+		AudioTextSearchIndexStore currentStore = getStore();
+		if (currentStore == null) {
+			return false;
+		}
+		OptionalLong fileRevision = currentStore.load(newTable::put, newTable::remove);
+		if (fileRevision.isEmpty()) {
+			return false;
+		}
+		// detects missed changes, e.g. after a crash or a restored backup
+		long revision = revisionService.getRevision();
+		if (fileRevision.getAsLong() != revision) {
+			logger.warn(String.format("Text search index files do not match the database: revision %d in files, %d in database", fileRevision.getAsLong(), revision));
+			return false;
+		}
+		newTable.revision = revision;
+		return true;
+	}
+
+	/**
+	 * Replaces the index by a loaded table. Tracks refreshed while loading are reloaded afterwards.
+	 * @param source name of the source for logging
+	 * @param loader fills the table, returns false if the source is not usable
+	 * @param save true if the table must be written to the index files
+	 * @return true if the table was replaced
+	 */
+	private boolean replaceTable(String source, TableLoader loader, boolean save) {
+		synchronized (buildMonitor) {
+			synchronized (this) {
+				pendingTrackIds = new HashSet<>();
+				clearedWhileBuilding = false;
+			}
+			logger.info("Loading text search index from " + source + "...");
+			StopWatch watch = StopWatch.createStarted();
+			TrackTable newTable = new TrackTable();
+			boolean loaded;
+			try {
+				loaded = loader.load(newTable);
+			}
+			catch (Exception exc) {
+				logger.error("Text search index cannot be loaded from " + source + ": " + exc.getMessage(), exc);
+				loaded = false;
+			}
+			Set<Long> trackIds;
+			synchronized (this) {
+				trackIds = pendingTrackIds;
+				pendingTrackIds = null;
+				if (!loaded) {
+					return false;
+				}
+				setTable(clearedWhileBuilding ? new TrackTable() : newTable);
+				if (save) {
+					writeStore(this::writeBase);
+				}
+			}
+			refreshTracks(trackIds);
+			ready = true;
+			logger.info(String.format("Text search index of %d tracks loaded from %s in %dms", newTable.tracks.liveCount, source, watch.getTime(TimeUnit.MILLISECONDS)));
+			return true;
+		}
+	}
+
+	/**
+	 * Reloads the given tracks from the database: tracks which do not exist anymore are removed from the index.
+	 * Must be called after the changes are committed.
+	 * @param trackIds
+	 */
+	public void refreshTracks(Collection<Long> trackIds) {
+		if (trackIds.isEmpty() || !isEnabled()) {
+			return;
+		}
+		List<Long> trackIdList = List.copyOf(trackIds);
+		// read before the entries: changes committed meanwhile are refreshed by their own call
+		long revision = readRevision();
+		List<TrackIndexEntry> entries = findIndexEntries(trackIdList);
+		synchronized (this) {
+			if (pendingTrackIds != null) {
+				// reloaded after the table is replaced
+				pendingTrackIds.addAll(trackIdList);
+				return;
+			}
+			if (revision < table.revision) {
+				// a newer refresh was applied meanwhile and may contain newer entries of the same tracks
+				revision = readRevision();
+				entries = findIndexEntries(trackIdList);
+			}
+			putEntries(trackIdList, entries, revision);
+		}
+	}
+	
+	private List<TrackIndexEntry> findIndexEntries(List<Long> trackIds) {
+		List<TrackIndexEntry> entries = new ArrayList<>(trackIds.size());
+		for (List<Long> chunk : Lists.partition(trackIds, REFRESH_CHUNK_SIZE)) {
+			entries.addAll(trackRepository.findIndexEntriesByIdIn(chunk));
+		}
+		return entries;
+	}
+	
+	/**
+	 * Replaces the entries of the given tracks (must be called with the monitor held, so the changes are written in order)
+	 */
+	private void putEntries(List<Long> trackIds, List<TrackIndexEntry> entries, long revision) {
+		lock.writeLock().lock();
+		try {
+			trackIds.forEach(table::remove);
+			entries.forEach(table::put);
+			table.revision = revision;
+			if (table.isFragmented()) {
+				table = table.compact();
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		writeStore(currentStore -> {
+			currentStore.append(revision, trackIds, entries);
+			if (currentStore.needsMerge()) {
+				writeBase(currentStore);
+			}
+		});
+	}
+
+	/**
+	 * Removes all tracks from the index (must be called after the tracks are deleted)
+	 */
+	public synchronized void clear() {
+		if (pendingTrackIds != null) {
+			clearedWhileBuilding = true;
+		}
+		TrackTable emptyTable = new TrackTable();
+		emptyTable.revision = readRevision();
+		setTable(emptyTable);
+		writeStore(currentStore -> currentStore.clear(emptyTable.revision));
+	}
+
+	/**
+	 * Returns the current catalog revision, -1 if it cannot be read (the index files are not used at the next start)
+	 */
+	private long readRevision() {
+		try {
+			return revisionService.getRevision();
+		}
+		catch (AudioException exc) {
+			return -1;
+		}
+	}
+
+	@Nullable
+	private synchronized AudioTextSearchIndexStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Writes to the index files in the background, in the order of the calls (must be called with the monitor held)
+	 */
+	private void writeStore(StoreWriter writer) {
+		AudioTextSearchIndexStore currentStore = store;
+		if (currentStore == null || storeExecutor.isShutdown()) {
+			return;
+		}
+		storeExecutor.submit(() -> {
+			if (getStore() != currentStore) {
+				// not used anymore after an error
+				return;
+			}
+			try {
+				writer.write(currentStore);
+			}
+			catch (IOException exc) {
+				logger.error("Text search index file cannot be written: " + exc.getMessage(), exc);
+				synchronized (this) {
+					if (store == currentStore) {
+						invalidateStore();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts the next delta segment and writes the current table into a base segment (called by the store executor)
+	 */
+	private void writeBase(AudioTextSearchIndexStore currentStore) throws IOException {
+		int baseGeneration = currentStore.rotate();
+		// copy the entries, so searches and refreshes are not blocked while writing
+		List<TrackIndexEntry> entries;
+		long revision;
+		lock.readLock().lock();
+		try {
+			entries = table.entries().toList();
+			revision = table.revision;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		currentStore.writeBase(baseGeneration, revision, entries);
+	}
+
+	/**
+	 * Stops using the index files after an error: the files are emptied, so the index is rebuilt from the database at the next start
+	 */
+	private void invalidateStore() {
+		if (store != null) {
+			try {
+				store.clear(-1);
+			}
+			catch (IOException exc) {
+				logger.error(exc.getMessage(), exc);
+			}
+			closeStore();
+		}
+	}
+
+	private void closeStore() {
+		if (store != null) {
+			try {
+				store.close();
+			}
+			catch (IOException exc) {
+				logger.error(exc.getMessage(), exc);
+			}
+			store = null;
+		}
+	}
+
+	private void setTable(TrackTable table) {
+		lock.writeLock().lock();
+		try {
+			this.table = table;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the IDs of the artists matching the tokens (same conditions as the SQL query of the text search)
+	 */
+	public List<Long> findArtistIds(AudioTextSearchTokens tokens, int maxResults) {
+		lock.readLock().lock();
+		try {
+			if (tokens.isAllUndefined() || tokens.containsOnlyTypes(SearchTokenType.ARTIST, SearchTokenType.ARTIST_NOT)) {
+				return table.findEntityIds(table.artists, tokens, maxResults);
+			}
+			return table.findTrackReferenceIds(table.artists, table.artistSlots, toConditions(tokens, Field.ARTIST), maxResults);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the IDs of the albums matching the tokens (same conditions as the SQL query of the text search)
+	 */
+	public List<Long> findAlbumIds(AudioTextSearchTokens tokens, int maxResults) {
+		lock.readLock().lock();
+		try {
+			if (tokens.isAllUndefined() || tokens.containsOnlyTypes(SearchTokenType.ALBUM, SearchTokenType.ALBUM_NOT)) {
+				return table.findEntityIds(table.albums, tokens, maxResults);
+			}
+			return table.findTrackReferenceIds(table.albums, table.albumSlots, toConditions(tokens, Field.ALBUM), maxResults);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the IDs of the tracks matching the tokens (same conditions as the SQL query of the text search)
+	 */
+	public List<Long> findTrackIds(AudioTextSearchTokens tokens, int maxResults) {
+		lock.readLock().lock();
+		try {
+			List<Long> trackIds = new ArrayList<>();
+			TrackTable.SlotIterator it = table.matchTracks(toConditions(tokens, Field.TRACK));
+			while (trackIds.size() < maxResults && it.hasNext()) {
+				trackIds.add(table.tracks.ids[it.next()]);
+			}
+			return trackIds;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the distinct names containing the text (ignoring case) in alphabetical order
+	 */
+	public List<String> findProposals(AudioAttribute attribute, String text, int maxNumber) {
+		lock.readLock().lock();
+		try {
+			NameIndex names = switch (attribute) {
+				case ARTIST -> table.artists;
+				case ALBUM -> table.albums;
+				case MEDIUM -> table.media;
+				case GENRE -> table.genres;
+				case TRACK -> table.tracks;
+				default -> null;
+			};
+			return names != null ? names.findNames(normalize(text), maxNumber) : List.of();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Converts the tokens to conditions on the tracks: undefined tokens are compared with the default field if all tokens are undefined,
+	 * otherwise with artist, album and track
+	 */
+	private static List<Condition> toConditions(AudioTextSearchTokens tokens, Field defaultField) {
+		List<Condition> conditions = new ArrayList<>();
+		for (AudioTextSearchToken token : tokens.getTokens()) {
+			Field field = switch (token.getType()) {
+				case ARTIST, ARTIST_NOT -> Field.ARTIST;
+				case ALBUM, ALBUM_NOT -> Field.ALBUM;
+				case TRACK, TRACK_NOT -> Field.TRACK;
+				case MEDIUM, MEDIUM_NOT -> Field.MEDIUM;
+				case GENRE, GENRE_NOT -> Field.GENRE;
+				case UNDEFINED -> tokens.isAllUndefined() ? defaultField : Field.ANY;
+			};
+			conditions.add(new Condition(field, normalize(token.getValue()), token.getType().isNegate()));
+		}
+		return conditions;
+	}
+
+	private static String normalize(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Growable list of slots
+	 */
+	private static class IntList {
+		private int[] values = new int[4];
+		private int size;
+
+		public void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		public int last() {
+			return values[size - 1];
+		}
+	}
+
+	/**
+	 * Distinct name of the sorted names with its lower case key and number of slots
+	 */
+	private static class SortedName {
+		final String key;
+		int count;
+
+		public SortedName(String key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Names by slot with trigram postings and the sorted names for proposals. Removed names leave an empty slot until the index is compacted.
+	 */
+	private static class NameIndex {
+		final Map<Long, Integer> slotsById = new HashMap<>();
+		final Map<Long, IntList> postings = new HashMap<>();
+		final TreeMap<String, SortedName> sortedNames = new TreeMap<>();
+		long[] ids = new long[16];
+		String[] names = new String[16];
+		// lower case, null if removed
+		String[] keys = new String[16];
+		int size;
+		int liveCount;
+
+		public int add(long id, String name) {
+			if (size == ids.length) {
+				grow(size * 2);
+			}
+			int slot = size++;
+			String normalizedName = normalize(name);
+			ids[slot] = id;
+			names[slot] = name;
+			keys[slot] = normalizedName;
+			slotsById.put(id, slot);
+			liveCount ++;
+			for (int i = 0; i + 3 <= normalizedName.length(); ++ i) {
+				IntList posting = postings.computeIfAbsent(trigram(normalizedName, i), k -> new IntList());
+				// slots are added in ascending order: the same trigram occurs several times in a name
+				if (posting.size == 0 || posting.last() != slot) {
+					posting.add(slot);
+				}
+			}
+			sortedNames.computeIfAbsent(name, k -> new SortedName(normalizedName)).count ++;
+			return slot;
+		}
+
+		protected void grow(int capacity) {
+			ids = Arrays.copyOf(ids, capacity);
+			names = Arrays.copyOf(names, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+		}
+
+		public void remove(int slot) {
+			sortedNames.computeIfPresent(names[slot], (name, sortedName) -> -- sortedName.count > 0 ? sortedName : null);
+			slotsById.remove(ids[slot]);
+			names[slot] = null;
+			keys[slot] = null;
+			liveCount --;
+		}
+
+		@Nullable
+		public Integer getSlot(long id) {
+			return slotsById.get(id);
+		}
+
+		public boolean isLive(int slot) {
+			return keys[slot] != null;
+		}
+
+		public boolean contains(int slot, String value) {
+			return keys[slot].contains(value);
+		}
+
+		/**
+		 * Returns the smallest posting of the trigrams of the value, null if the value is too short to use the postings
+		 */
+		@Nullable
+		public IntList getCandidates(String value) {
+			if (value.length() < 3) {
+				return null;
+			}
+			IntList candidates = null;
+			for (int i = 0; i + 3 <= value.length(); ++ i) {
+				IntList posting = postings.get(trigram(value, i));
+				if (posting == null) {
+					return new IntList();
+				}
+				if (candidates == null || posting.size < candidates.size) {
+					candidates = posting;
+				}
+			}
+			return candidates;
+		}
+
+		/**
+		 * Returns the first distinct names containing the value in alphabetical order.
+		 * The names are matched by contains (like the SQL query), so a prefix tree cannot answer them: 
+		 * the walk keeps at most maxCount names instead.
+		 */
+		public List<String> findNames(String value, int maxCount) {
+			if (maxCount <= 0) {
+				return List.of();
+			}
+			IntList candidates = getCandidates(value);
+			if (candidates == null) {
+				// short values are contained in many names: the walk in alphabetical order stops at the last name needed
+				List<String> result = new ArrayList<>();
+				for (Map.Entry<String, SortedName> entry : sortedNames.entrySet()) {
+					if (entry.getValue().key.contains(value)) {
+						result.add(entry.getKey());
+						if (result.size() >= maxCount) {
+							break;
+						}
+					}
+				}
+				return result;
+			}
+			// the postings are not sorted by name: keep the first names found so far
+			TreeSet<String> result = new TreeSet<>();
+			for (int i = 0; i < candidates.size; ++ i) {
+				int slot = candidates.values[i];
+				if (!isLive(slot)) {
+					continue;
+				}
+				String name = names[slot];
+				if (result.size() >= maxCount && name.compareTo(result.last()) >= 0) {
+					continue;
+				}
+				if (contains(slot, value) && result.add(name) && result.size() > maxCount) {
+					result.pollLast();
+				}
+			}
+			return new ArrayList<>(result);
+		}
+
+		/**
+		 * Returns the max. number of slots containing the value
+		 */
+		public int estimate(String value) {
+			IntList candidates = getCandidates(value);
+			return candidates != null ? candidates.size : liveCount;
+		}
+
+		/**
+		 * Returns the live slots containing the value in ascending order
+		 */
+		public IntList match(String value) {
+			IntList result = new IntList();
+			IntList candidates = getCandidates(value);
+			int count = candidates != null ? candidates.size : size;
+			for (int i = 0; i < count; ++ i) {
+				int slot = candidates != null ? candidates.values[i] : i;
+				if (isLive(slot) && contains(slot, value)) {
+					result.add(slot);
+				}
+			}
+			return result;
+		}
+
+		private static long trigram(String s, int i) {
+			return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+		}
+	}
+
+	/**
+	 * Names of artists, albums, media or genres with the slots of their tracks.
+	 * An entity is removed with its last track.
+	 */
+	private static class EntityIndex extends NameIndex {
+		private int[] trackCounts = new int[16];
+		private IntList[] trackSlots = new IntList[16];
+
+		@Override
+		protected void grow(int capacity) {
+			super.grow(capacity);
+			trackCounts = Arrays.copyOf(trackCounts, capacity);
+			trackSlots = Arrays.copyOf(trackSlots, capacity);
+		}
+
+		public int addTrack(long id, String name, int trackSlot) {
+			Integer slot = getSlot(id);
+			if (slot == null) {
+				slot = add(id, name);
+				trackSlots[slot] = new IntList();
+			}
+			trackCounts[slot] ++;
+			trackSlots[slot].add(trackSlot);
+			return slot;
+		}
+
+		public void removeTrack(int slot) {
+			if (-- trackCounts[slot] == 0) {
+				remove(slot);
+				trackSlots[slot] = null;
+			}
+		}
+	}
+
+	/**
+	 * All tracks with the slots of their artist, album, medium and genre
+	 */
+	private static class TrackTable {
+		private final NameIndex tracks = new NameIndex();
+		private final EntityIndex artists = new EntityIndex();
+		private final EntityIndex albums = new EntityIndex();
+		private final EntityIndex media = new EntityIndex();
+		private final EntityIndex genres = new EntityIndex();
+		private int[] artistSlots = new int[16];
+		private int[] albumSlots = new int[16];
+		private int[] mediumSlots = new int[16];
+		private int[] genreSlots = new int[16];
+		// catalog revision of the entries, -1 if unknown
+		private long revision = -1;
+
+		/**
+		 * Iterator over the matching track slots
+		 */
+		private class SlotIterator {
+			private final List<Condition> conditions;
+			@Nullable
+			private final int[] candidates;
+			private final int count;
+			private int index;
+			private int next = -1;
+
+			public SlotIterator(List<Condition> conditions, @Nullable int[] candidates) {
+				this.conditions = conditions;
+				this.candidates = candidates;
+				this.count = candidates != null ? candidates.length : tracks.size;
+			}
+
+			public boolean hasNext() {
+				while (next == -1 && index < count) {
+					int slot = candidates != null ? candidates[index] : index;
+					index ++;
+					if (tracks.isLive(slot) && matches(slot, conditions)) {
+						next = slot;
+					}
+				}
+				return next != -1;
+			}
+
+			public int next() {
+				int slot = next;
+				next = -1;
+				return slot;
+			}
+		}
+
+		public void put(TrackIndexEntry entry) {
+			int slot = tracks.add(entry.id(), entry.name());
+			if (slot == artistSlots.length) {
+				int capacity = slot * 2;
+				artistSlots = Arrays.copyOf(artistSlots, capacity);
+				albumSlots = Arrays.copyOf(albumSlots, capacity);
+				mediumSlots = Arrays.copyOf(mediumSlots, capacity);
+				genreSlots = Arrays.copyOf(genreSlots, capacity);
+			}
+			artistSlots[slot] = artists.addTrack(entry.artistId(), entry.artistName(), slot);
+			albumSlots[slot] = albums.addTrack(entry.albumId(), entry.albumName(), slot);
+			mediumSlots[slot] = media.addTrack(entry.mediumId(), entry.mediumName(), slot);
+			genreSlots[slot] = genres.addTrack(entry.genreId(), entry.genreName(), slot);
+		}
+
+		public void remove(long trackId) {
+			Integer slot = tracks.getSlot(trackId);
+			if (slot != null) {
+				tracks.remove(slot);
+				artists.removeTrack(artistSlots[slot]);
+				albums.removeTrack(albumSlots[slot]);
+				media.removeTrack(mediumSlots[slot]);
+				genres.removeTrack(genreSlots[slot]);
+			}
+		}
+
+		/**
+		 * Returns true if more than half of the slots are removed
+		 */
+		public boolean isFragmented() {
+			return tracks.size > 1000 && tracks.liveCount < tracks.size / 2;
+		}
+
+		/**
+		 * Returns a copy without removed slots
+		 */
+		public TrackTable compact() {
+			TrackTable copy = new TrackTable();
+			entries().forEach(copy::put);
+			copy.revision = revision;
+			return copy;
+		}
+
+		/**
+		 * Returns the entries of all tracks
+		 */
+		public Stream<TrackIndexEntry> entries() {
+			return IntStream.range(0, tracks.size).filter(tracks::isLive).mapToObj(slot -> new TrackIndexEntry(tracks.ids[slot], tracks.names[slot],
+					artists.ids[artistSlots[slot]], artists.names[artistSlots[slot]], albums.ids[albumSlots[slot]], albums.names[albumSlots[slot]],
+					media.ids[mediumSlots[slot]], media.names[mediumSlots[slot]], genres.ids[genreSlots[slot]], genres.names[genreSlots[slot]]));
+		}
+
+		/**
+		 * Returns the IDs of the entities whose names match all tokens
+		 */
+		public List<Long> findEntityIds(EntityIndex entities, AudioTextSearchTokens tokens, int maxResults) {
+			List<String> values = tokens.getTokens().stream().map(t -> normalize(t.getValue())).toList();
+			IntList candidates = null;
+			for (int i = 0; i < values.size(); ++ i) {
+				if (!tokens.getTokens().get(i).getType().isNegate()) {
+					IntList tokenCandidates = entities.getCandidates(values.get(i));
+					if (tokenCandidates != null && (candidates == null || tokenCandidates.size < candidates.size)) {
+						candidates = tokenCandidates;
+					}
+				}
+			}
+			List<Long> ids = new ArrayList<>();
+			int count = candidates != null ? candidates.size : entities.size;
+			for (int i = 0; i < count && ids.size() < maxResults; ++ i) {
+				int slot = candidates != null ? candidates.values[i] : i;
+				if (entities.isLive(slot) && matches(entities, slot, tokens, values)) {
+					ids.add(entities.ids[slot]);
+				}
+			}
+			return ids;
+		}
+
+		private static boolean matches(EntityIndex entities, int slot, AudioTextSearchTokens tokens, List<String> values) {
+			for (int i = 0; i < values.size(); ++ i) {
+				if (entities.contains(slot, values.get(i)) == tokens.getTokens().get(i).getType().isNegate()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the distinct IDs of the entities referenced by the matching tracks
+		 */
+		public List<Long> findTrackReferenceIds(EntityIndex entities, int[] referenceSlots, List<Condition> conditions, int maxResults) {
+			Set<Long> ids = new LinkedHashSet<>();
+			SlotIterator it = matchTracks(conditions);
+			while (ids.size() < maxResults && it.hasNext()) {
+				ids.add(entities.ids[referenceSlots[it.next()]]);
+			}
+			return new ArrayList<>(ids);
+		}
+
+		/**
+		 * Returns the tracks matching all conditions.
+		 * The candidates are taken from the most selective positive condition, otherwise all tracks are scanned.
+		 */
+		public SlotIterator matchTracks(List<Condition> conditions) {
+			Condition best = null;
+			int bestEstimate = tracks.liveCount / SCAN_RATIO;
+			for (Condition condition : conditions) {
+				if (!condition.negate()) {
+					int estimate = estimate(condition);
+					if (estimate <= bestEstimate) {
+						best = condition;
+						bestEstimate = estimate;
+					}
+				}
+			}
+			return new SlotIterator(conditions, best != null ? collect(best) : null);
+		}
+
+		private int estimate(Condition condition) {
+			return switch (condition.field()) {
+				case ARTIST -> countTracks(artists, condition.value());
+				case ALBUM -> countTracks(albums, condition.value());
+				case MEDIUM -> countTracks(media, condition.value());
+				case GENRE -> countTracks(genres, condition.value());
+				case TRACK -> tracks.estimate(condition.value());
+				case ANY -> countTracks(artists, condition.value()) + countTracks(albums, condition.value()) + tracks.estimate(condition.value());
+			};
+		}
+
+		private static int countTracks(EntityIndex entities, String value) {
+			IntList slots = entities.match(value);
+			int count = 0;
+			for (int i = 0; i < slots.size; ++ i) {
+				count += entities.trackCounts[slots.values[i]];
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the sorted track slots which may match the condition
+		 */
+		private int[] collect(Condition condition) {
+			IntList result = new IntList();
+			switch (condition.field()) {
+				case ARTIST -> collectTracks(artists, condition.value(), result);
+				case ALBUM -> collectTracks(albums, condition.value(), result);
+				case MEDIUM -> collectTracks(media, condition.value(), result);
+				case GENRE -> collectTracks(genres, condition.value(), result);
+				case TRACK -> addAll(tracks.match(condition.value()), result);
+				case ANY -> {
+					collectTracks(artists, condition.value(), result);
+					collectTracks(albums, condition.value(), result);
+					addAll(tracks.match(condition.value()), result);
+				}
+			}
+			return Arrays.stream(result.values, 0, result.size).sorted().distinct().toArray();
+		}
+
+		private static void collectTracks(EntityIndex entities, String value, IntList result) {
+			IntList slots = entities.match(value);
+			for (int i = 0; i < slots.size; ++ i) {
+				addAll(entities.trackSlots[slots.values[i]], result);
+			}
+		}
+
+		private static void addAll(IntList source, IntList target) {
+			for (int i = 0; i < source.size; ++ i) {
+				target.add(source.values[i]);
+			}
+		}
+
+		private boolean matches(int slot, List<Condition> conditions) {
+			for (Condition condition : conditions) {
+				if (contains(slot, condition) == condition.negate()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean contains(int slot, Condition condition) {
+			String value = condition.value();
+			return switch (condition.field()) {
+				case ARTIST -> artists.contains(artistSlots[slot], value);
+				case ALBUM -> albums.contains(albumSlots[slot], value);
+				case MEDIUM -> media.contains(mediumSlots[slot], value);
+				case GENRE -> genres.contains(genreSlots[slot], value);
+				case TRACK -> tracks.contains(slot, value);
+				case ANY -> artists.contains(artistSlots[slot], value) || albums.contains(albumSlots[slot], value) || tracks.contains(slot, value);
+			};
+		}
+	}
+
+}
@@ -0,0 +1,344 @@
+package de.kobich.audiosolutions.core.service.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+
+import de.kobich.audiosolutions.core.service.persist.CatalogRevisionService;
+import de.kobich.audiosolutions.core.service.persist.domain.TrackIndexEntry;
+
+/**
+ * Files of the text search index: one base segment with all entries and append-only delta segments with the changes since then.
+ * <p>
+ * The base segment <code>base-N.idx</code> contains the state before the delta segment <code>delta-N.log</code>,
+ * the delta segments N, N+1, ... are replayed in this order. A merge starts the next delta segment and writes the current entries into the next base segment.
+ * Base segments are written to a temporary file and renamed, so a crash leaves the previous base segment and at most an incomplete record at the end of a delta segment.
+ * Each delta record replaces the complete state of a track: it does not matter if a base segment already contains later changes.
+ * <p>
+ * The header of a base segment and the last record of each append contain the catalog revision the entries reflect (see {@link CatalogRevisionService}).
+ * Appends are synced to disk, so the revision of the loaded files is never newer than their entries.
+ */
+class AudioTextSearchIndexStore implements Closeable {
+	private static final Logger logger = Logger.getLogger(AudioTextSearchIndexStore.class);
+	private static final int MAGIC = 0x41535449;
+	private static final int FORMAT_VERSION = 3;
+	private static final String BASE_PREFIX = "base-";
+	private static final String BASE_SUFFIX = ".idx";
+	private static final String DELTA_PREFIX = "delta-";
+	private static final String DELTA_SUFFIX = ".log";
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte REVISION = 3;
+	// max. length of a name: a larger length is caused by a corrupt file
+	private static final int MAX_STRING_LENGTH = 64 * 1024;
+	/**
+	 * Min. size of the delta segments which triggers a merge
+	 */
+	private static final long MIN_MERGE_SIZE = 1024 * 1024;
+	private final File directory;
+	// generation of the active delta segment
+	private int generation;
+	@Nullable
+	private FileOutputStream deltaFileOut;
+	@Nullable
+	private DataOutputStream deltaOut;
+	private long deltaSize;
+	private long baseSize;
+
+	public AudioTextSearchIndexStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Reads the base segment and replays the delta segments
+	 * @param putter adds or replaces an entry
+	 * @param remover removes the entry of a track ID
+	 * @return the catalog revision of the loaded entries, nothing if no base segment exists
+	 */
+	public synchronized OptionalLong load(Consumer<TrackIndexEntry> putter, LongConsumer remover) throws IOException {
+		OptionalInt baseGeneration = findGenerations(BASE_PREFIX, BASE_SUFFIX).stream().mapToInt(Integer::intValue).max();
+		if (baseGeneration.isEmpty()) {
+			return OptionalLong.empty();
+		}
+		this.generation = baseGeneration.getAsInt();
+		File baseFile = getBaseFile(generation);
+		long revision;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(baseFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException("Invalid search index file: " + baseFile);
+			}
+			revision = in.readLong();
+			int count = in.readInt();
+			for (int i = 0; i < count; ++ i) {
+				putter.accept(readEntry(in));
+			}
+		}
+		catch (EOFException exc) {
+			throw new IOException("Incomplete search index file: " + baseFile, exc);
+		}
+		this.baseSize = baseFile.length();
+		this.deltaSize = 0;
+		for (int deltaGeneration : findGenerations(DELTA_PREFIX, DELTA_SUFFIX)) {
+			if (deltaGeneration >= generation) {
+				Replay replay = replay(getDeltaFile(deltaGeneration), putter, remover);
+				deltaSize += replay.validSize();
+				// the base segment may already contain the later records of its delta segment
+				revision = Math.max(revision, replay.revision().orElse(revision));
+				this.generation = deltaGeneration;
+			}
+		}
+		openDelta();
+		return OptionalLong.of(revision);
+	}
+
+	/**
+	 * Result of a replayed delta segment
+	 * @param validSize size without an incomplete record at the end
+	 * @param revision last catalog revision of the segment
+	 */
+	private static record Replay(long validSize, OptionalLong revision) {}
+
+	/**
+	 * Replays a delta segment and cuts off an incomplete record at its end
+	 */
+	private Replay replay(File deltaFile, Consumer<TrackIndexEntry> putter, LongConsumer remover) throws IOException {
+		// delta segments are small: read completely, so the file can be truncated afterwards
+		byte[] bytes = Files.readAllBytes(deltaFile.toPath());
+		ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(buffer);
+		int validSize = 0;
+		OptionalLong revision = OptionalLong.empty();
+		try {
+			while (buffer.available() > 0) {
+				byte operation = in.readByte();
+				if (operation == PUT) {
+					TrackIndexEntry entry = readEntry(in);
+					remover.accept(entry.id());
+					putter.accept(entry);
+				}
+				else if (operation == REMOVE) {
+					remover.accept(in.readLong());
+				}
+				else if (operation == REVISION) {
+					revision = OptionalLong.of(in.readLong());
+				}
+				else {
+					break;
+				}
+				validSize = bytes.length - buffer.available();
+			}
+		}
+		catch (EOFException exc) {
+			// incomplete record written before a crash
+		}
+		catch (IOException exc) {
+			logger.warn("Invalid record in search index file <" + deltaFile + ">: " + exc.getMessage());
+		}
+		if (validSize < bytes.length) {
+			logger.warn(String.format("Search index file <%s> truncated to %d bytes", deltaFile, validSize));
+			try (FileChannel channel = FileChannel.open(deltaFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(validSize);
+			}
+		}
+		return new Replay(validSize, revision);
+	}
+
+	/**
+	 * Appends the changes of tracks to the active delta segment and syncs it to disk (ignored if no segment is open)
+	 * @param revision catalog revision read before the entries
+	 * @param removedTrackIds IDs of the changed tracks
+	 * @param entries current entries of the tracks which still exist
+	 */
+	public synchronized void append(long revision, Iterable<Long> removedTrackIds, List<TrackIndexEntry> entries) throws IOException {
+		if (deltaOut == null) {
+			return;
+		}
+		int size = deltaOut.size();
+		for (Long trackId : removedTrackIds) {
+			deltaOut.writeByte(REMOVE);
+			deltaOut.writeLong(trackId);
+		}
+		for (TrackIndexEntry entry : entries) {
+			deltaOut.writeByte(PUT);
+			writeEntry(deltaOut, entry);
+		}
+		// the revision is the last record: if the append is incomplete, the files are older than the database
+		deltaOut.writeByte(REVISION);
+		deltaOut.writeLong(revision);
+		deltaOut.flush();
+		deltaFileOut.getFD().sync();
+		this.deltaSize += deltaOut.size() - size;
+	}
+
+	/**
+	 * Returns true if the delta segments should be merged into a new base segment
+	 */
+	public synchronized boolean needsMerge() {
+		return deltaOut != null && deltaSize > Math.max(MIN_MERGE_SIZE, baseSize / 2);
+	}
+
+	/**
+	 * Starts the next delta segment. The state before must be written by {@link #writeBase(int, long, List)} afterwards.
+	 * @return the generation of the new base segment
+	 */
+	public synchronized int rotate() throws IOException {
+		closeDelta();
+		generation ++;
+		openDelta();
+		return generation;
+	}
+
+	/**
+	 * Writes a base segment and deletes the segments which are not needed anymore
+	 * @param baseGeneration generation returned by {@link #rotate()}
+	 * @param revision catalog revision of the entries
+	 * @param entries
+	 */
+	public void writeBase(int baseGeneration, long revision, List<TrackIndexEntry> entries) throws IOException {
+		directory.mkdirs();
+		File baseFile = getBaseFile(baseGeneration);
+		File tmpFile = new File(directory, baseFile.getName() + ".tmp");
+		try (FileOutputStream fileOut = new FileOutputStream(tmpFile);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(revision);
+			out.writeInt(entries.size());
+			for (TrackIndexEntry entry : entries) {
+				writeEntry(out, entry);
+			}
+			out.flush();
+			fileOut.getFD().sync();
+		}
+		Files.move(tmpFile.toPath(), baseFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		synchronized (this) {
+			this.baseSize = baseFile.length();
+			// only the active delta segment is left
+			this.deltaSize = getDeltaFile(generation).length();
+		}
+		for (int oldGeneration : findGenerations(BASE_PREFIX, BASE_SUFFIX)) {
+			if (oldGeneration < baseGeneration) {
+				Files.deleteIfExists(getBaseFile(oldGeneration).toPath());
+			}
+		}
+		for (int oldGeneration : findGenerations(DELTA_PREFIX, DELTA_SUFFIX)) {
+			if (oldGeneration < baseGeneration) {
+				Files.deleteIfExists(getDeltaFile(oldGeneration).toPath());
+			}
+		}
+	}
+
+	/**
+	 * Deletes all segments and starts with an empty base segment
+	 * @param revision catalog revision of the empty catalog, -1 if the files must not be used anymore
+	 */
+	public synchronized void clear(long revision) throws IOException {
+		closeDelta();
+		for (int oldGeneration : findGenerations(DELTA_PREFIX, DELTA_SUFFIX)) {
+			Files.deleteIfExists(getDeltaFile(oldGeneration).toPath());
+		}
+		generation ++;
+		writeBase(generation, revision, List.of());
+		this.deltaSize = 0;
+		openDelta();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closeDelta();
+	}
+
+	private void openDelta() throws IOException {
+		directory.mkdirs();
+		this.deltaFileOut = new FileOutputStream(getDeltaFile(generation), true);
+		this.deltaOut = new DataOutputStream(new BufferedOutputStream(deltaFileOut));
+	}
+
+	private void closeDelta() throws IOException {
+		if (deltaOut != null) {
+			deltaOut.close();
+			deltaOut = null;
+			deltaFileOut = null;
+		}
+	}
+
+	private File getBaseFile(int generation) {
+		return new File(directory, BASE_PREFIX + generation + BASE_SUFFIX);
+	}
+
+	private File getDeltaFile(int generation) {
+		return new File(directory, DELTA_PREFIX + generation + DELTA_SUFFIX);
+	}
+
+	/**
+	 * Returns the generations of the existing files in ascending order
+	 */
+	private List<Integer> findGenerations(String prefix, String suffix) {
+		String[] fileNames = directory.list((dir, name) -> name.startsWith(prefix) && name.endsWith(suffix));
+		if (fileNames == null) {
+			return List.of();
+		}
+		return Stream.of(fileNames)
+				.map(name -> name.substring(prefix.length(), name.length() - suffix.length()))
+				.filter(generation -> generation.matches("\\d+"))
+				.map(Integer::valueOf).sorted().toList();
+	}
+
+	private static void writeEntry(DataOutputStream out, TrackIndexEntry entry) throws IOException {
+		out.writeLong(entry.id());
+		writeString(out, entry.name());
+		out.writeLong(entry.artistId());
+		writeString(out, entry.artistName());
+		out.writeLong(entry.albumId());
+		writeString(out, entry.albumName());
+		out.writeLong(entry.mediumId());
+		writeString(out, entry.mediumName());
+		out.writeLong(entry.genreId());
+		writeString(out, entry.genreName());
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static TrackIndexEntry readEntry(DataInput in) throws IOException {
+		return new TrackIndexEntry(in.readLong(), readString(in), in.readLong(), readString(in), in.readLong(), readString(in),
+				in.readLong(), readString(in), in.readLong(), readString(in));
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_STRING_LENGTH) {
+			throw new IOException("Invalid length of a name: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,191 @@
+package de.kobich.audiosolutions.core.service.search;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import com.google.common.primitives.Longs;
+
+import de.kobich.audiosolutions.core.AudioSolutions;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchExecutor.Branch;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchToken.SearchTokenType;
+
+/**
+ * Caches the IDs of the artists, albums and tracks found by a text search, so repeated searches (typing, paging, refreshing)
+ * only load the entities by their IDs.
+ * <p>
+ * The key is the canonical form of the tokens: the conditions of a search are combined by AND and compared case-insensitively,
+ * so the order and case of the tokens do not matter. The least recently used entries are evicted if there are more than
+ * {@link AudioSolutions#SEARCH_CACHE_SIZE_PROP} entries (0 disables the cache).
+ * <p>
+ * Each change of the catalog increments the version of the cache by {@link #invalidate()}.
+ * A result is stored with the version read before it was searched: if the catalog changed in the meantime, it is not used.
+ */
+@Service
+public class AudioTextSearchResultCache {
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+	// estimated sizes in bytes of the objects of an entry
+	private static final int ENTRY_OVERHEAD = 120;
+	private static final int TOKEN_OVERHEAD = 80;
+	private static final int ARRAY_OVERHEAD = 16;
+	@Autowired
+	private Environment env;
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	// guarded by this
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+
+	/**
+	 * Canonical search query
+	 */
+	public static record Key(List<TokenKey> tokens, int maxResults) {}
+	public static record TokenKey(SearchTokenType type, String value, boolean negate) {}
+
+	/**
+	 * Statistics since the last reset
+	 * @param hits number of branches found in the cache
+	 * @param misses number of branches searched
+	 * @param entries number of cached queries
+	 * @param memoryBytes estimated size of the cached queries
+	 */
+	public static record CacheStatistics(long hits, long misses, int entries, long memoryBytes) {
+		public double hitRatio() {
+			return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+		}
+	}
+
+	private static class Entry {
+		private final long version;
+		private final long[][] ids = new long[Branch.values().length][];
+
+		public Entry(long version) {
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Returns the canonical key of a search
+	 */
+	public Key createKey(AudioTextSearchTokens tokens, int maxResults) {
+		List<TokenKey> tokenKeys = tokens.getTokens().stream()
+				.map(t -> new TokenKey(t.getType(), t.getValue().toLowerCase(Locale.ROOT), t.getType().isNegate()))
+				.sorted(Comparator.comparing(TokenKey::type).thenComparing(TokenKey::value))
+				.toList();
+		return new Key(tokenKeys, maxResults);
+	}
+
+	/**
+	 * Returns the current version which must be read before searching
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns the cached IDs of a branch, null if they are not cached
+	 */
+	@Nullable
+	public List<Long> get(Key key, Branch branch) {
+		if (getMaxEntries() <= 0) {
+			return null;
+		}
+		long[] ids = null;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.version == version.get()) {
+				ids = entry.ids[branch.ordinal()];
+			}
+		}
+		if (ids == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return Longs.asList(ids);
+	}
+
+	/**
+	 * Caches the IDs of a branch
+	 * @param key
+	 * @param branch
+	 * @param searchVersion version read before searching
+	 * @param ids
+	 */
+	public synchronized void put(Key key, Branch branch, long searchVersion, List<Long> ids) {
+		int maxEntries = getMaxEntries();
+		if (maxEntries <= 0 || searchVersion != version.get()) {
+			return;
+		}
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(searchVersion);
+			entries.put(key, entry);
+			memoryBytes += estimateSize(key);
+		}
+		long[] oldIds = entry.ids[branch.ordinal()];
+		if (oldIds != null) {
+			memoryBytes -= estimateSize(oldIds);
+		}
+		entry.ids[branch.ordinal()] = Longs.toArray(ids);
+		memoryBytes += estimateSize(entry.ids[branch.ordinal()]);
+		// evict the least recently used entries
+		while (entries.size() > maxEntries) {
+			Map.Entry<Key, Entry> eldest = entries.entrySet().iterator().next();
+			memoryBytes -= estimateSize(eldest.getKey(), eldest.getValue());
+			entries.remove(eldest.getKey());
+		}
+	}
+
+	/**
+	 * Discards all cached results (must be called after the catalog is changed and the text search index is refreshed)
+	 */
+	public void invalidate() {
+		version.incrementAndGet();
+		synchronized (this) {
+			entries.clear();
+			memoryBytes = 0;
+		}
+	}
+
+	public synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(hits.get(), misses.get(), entries.size(), memoryBytes);
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private int getMaxEntries() {
+		return env.getProperty(AudioSolutions.SEARCH_CACHE_SIZE_PROP, Integer.class, DEFAULT_MAX_ENTRIES);
+	}
+
+	private static long estimateSize(Key key, Entry entry) {
+		long size = estimateSize(key);
+		for (long[] ids : entry.ids) {
+			if (ids != null) {
+				size += estimateSize(ids);
+			}
+		}
+		return size;
+	}
+
+	private static long estimateSize(Key key) {
+		return ENTRY_OVERHEAD + key.tokens().stream().mapToLong(t -> TOKEN_OVERHEAD + t.value().length() * 2L).sum();
+	}
+
+	private static long estimateSize(long[] ids) {
+		return ARRAY_OVERHEAD + ids.length * 8L;
+	}
+}
@@ -1,13 +1,19 @@
 package de.kobich.audiosolutions.core.service.search;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import de.kobich.audiosolutions.core.service.AudioException;
@@ -15,8 +21,15 @@ import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
 import de.kobich.audiosolutions.core.service.persist.repository.TextSearchRepository;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchExecutor.Branch;
 import lombok.RequiredArgsConstructor;
 
+/**
+ * Text search of artists, albums and tracks. 
+ * The IDs of the results are taken from the result cache or the text search index if possible, otherwise the database is queried.
+ * @see AudioTextSearchResultCache
+ * @see AudioTextSearchIndex
+ */
 @Service
 @Transactional(rollbackFor=AudioException.class, readOnly = true)
 @RequiredArgsConstructor
@@ -26,6 +39,12 @@ public class AudioTextSearchService {
 	private final AudioTextSearchTokenizerService tokenizerService;
 	@Autowired
 	private final TextSearchRepository searchRepository;
+	@Autowired
+	private final AudioTextSearchExecutor searchExecutor;
+	@Autowired
+	private final AudioTextSearchIndex searchIndex;
+	@Autowired
+	private final AudioTextSearchResultCache resultCache;
 
 	public AudioTextSearchResult search(String input, int maxResults) throws AudioException {
 		final AudioTextSearchTokens tokens = tokenizerService.tokenize(input);
@@ -33,58 +52,59 @@ public class AudioTextSearchService {
 		
 		StopWatch watch = new StopWatch();
 		watch.start();
-		List<Artist> artists = searchRepository.findArtistsByTokens(tokens, maxResults);
+		List<Artist> artists = findArtists(tokens, maxResults);
 		logger.info(String.format("Find artists takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		watch.reset();
 		
 		watch.start();
-		List<Album> albums = searchRepository.findAlbumsByTokens(tokens, maxResults);
+		List<Album> albums = findAlbums(tokens, maxResults);
 		logger.info(String.format("Find albums takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		watch.reset();
 
 		watch.start();
-		List<Track> tracks = searchRepository.findTracksByTokens(tokens, maxResults);
+		List<Track> tracks = findTracks(tokens, maxResults);
 		logger.info(String.format("Find tracks takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		return new AudioTextSearchResult(artists, albums, tracks);
 	}
 	
+	/**
+	 * Searches artists, albums and tracks in parallel
+	 * @see #searchSimultaneously(String, int, String)
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public AudioTextSearchResult searchSimultaneously(String input, int maxResults) throws AudioException {
+		return searchSimultaneously(input, maxResults, null);
+	}
+	
+	/**
+	 * Searches artists, albums and tracks in parallel, each in its own read-only transaction
+	 * @param input
+	 * @param maxResults
+	 * @param channel a newer search of the same channel cancels this search, null if it cannot be superseded
+	 * @throws AudioException {@link AudioException#SEARCH_CANCELLED} if the search is superseded
+	 * @see AudioTextSearchExecutor
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public AudioTextSearchResult searchSimultaneously(String input, int maxResults, @Nullable String channel) throws AudioException {
 		final AudioTextSearchTokens tokens = tokenizerService.tokenize(input);
 		logger.info(String.format("Input: <%s> -> Tokens: %s", input, tokens));
 		StopWatch completeWatch = new StopWatch();
 		completeWatch.start();
 		
-		CompletableFuture<List<Artist>> artists = CompletableFuture.supplyAsync(() -> {
-			StopWatch watch = new StopWatch();
-			watch.start();
-			try {
-				return searchRepository.findArtistsByTokens(tokens, maxResults);
-			} finally {
-				logger.info(String.format("Find artists takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
-			}
-		});
-		CompletableFuture<List<Album>> albums = CompletableFuture.supplyAsync(() -> {
-			StopWatch watch = new StopWatch();
-			watch.start();
-			try {
-				return searchRepository.findAlbumsByTokens(tokens, maxResults);
-			} finally {
-				logger.info(String.format("Find albums takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
-			}
-		});
-		CompletableFuture<List<Track>> tracks = CompletableFuture.supplyAsync(() -> {
-			StopWatch watch = new StopWatch();
-			watch.start();
-			try {
-				return searchRepository.findTracksByTokens(tokens, maxResults);
-			} finally {
-				logger.info(String.format("Find tracks takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
-			}
-		});
-		
-		try {
+		try (AudioTextSearchExecutor.Search search = searchExecutor.begin(channel)) {
+			CompletableFuture<List<Artist>> artists = search.submit(Branch.ARTISTS, () -> findArtists(tokens, maxResults));
+			CompletableFuture<List<Album>> albums = search.submit(Branch.ALBUMS, () -> findAlbums(tokens, maxResults));
+			CompletableFuture<List<Track>> tracks = search.submit(Branch.TRACKS, () -> findTracks(tokens, maxResults));
 			return new AudioTextSearchResult(artists.get(), albums.get(), tracks.get());
 		}
+		catch (CancellationException e) {
+			logger.info(String.format("Search <%s> superseded", input));
+			throw new AudioException(AudioException.SEARCH_CANCELLED);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AudioException(AudioException.INTERNAL, e);
+		}
 		catch (Exception e) {
 			logger.error(e.getMessage(), e);
 			throw new AudioException(AudioException.INTERNAL);
@@ -92,7 +112,6 @@ public class AudioTextSearchService {
 		finally {
 			logger.info(String.format("Find all takes %dms", completeWatch.getTime(TimeUnit.MILLISECONDS)));
 		}
-		
 	}
 
 	public List<Artist> searchArtists(String input, int maxResults) throws AudioException {
@@ -101,7 +120,7 @@ public class AudioTextSearchService {
 
 		StopWatch watch = new StopWatch();
 		watch.start();
-		List<Artist> artists = searchRepository.findArtistsByTokens(tokens, maxResults);
+		List<Artist> artists = findArtists(tokens, maxResults);
 		logger.info(String.format("Find artists takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		return artists;
 	}
@@ -112,7 +131,7 @@ public class AudioTextSearchService {
 
 		StopWatch watch = new StopWatch();
 		watch.start();
-		List<Album> albums = searchRepository.findAlbumsByTokens(tokens, maxResults);
+		List<Album> albums = findAlbums(tokens, maxResults);
 		logger.info(String.format("Find albums takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		return albums;
 	}
@@ -123,9 +142,43 @@ public class AudioTextSearchService {
 
 		StopWatch watch = new StopWatch();
 		watch.start();
-		List<Track> tracks = searchRepository.findTracksByTokens(tokens, maxResults);
+		List<Track> tracks = findTracks(tokens, maxResults);
 		logger.info(String.format("Find tracks takes %dms", watch.getTime(TimeUnit.MILLISECONDS)));
 		return tracks;
 	}
 
+	private List<Artist> findArtists(AudioTextSearchTokens tokens, int maxResults) {
+		return findCached(tokens, maxResults, Branch.ARTISTS, searchRepository::findArtistsByIds, () -> searchIndex.isReady() 
+				? searchRepository.findArtistsByIds(searchIndex.findArtistIds(tokens, maxResults)) 
+				: searchRepository.findArtistsByTokens(tokens, maxResults), Artist::getId);
+	}
+
+	private List<Album> findAlbums(AudioTextSearchTokens tokens, int maxResults) {
+		return findCached(tokens, maxResults, Branch.ALBUMS, searchRepository::findAlbumsByIds, () -> searchIndex.isReady() 
+				? searchRepository.findAlbumsByIds(searchIndex.findAlbumIds(tokens, maxResults)) 
+				: searchRepository.findAlbumsByTokens(tokens, maxResults), Album::getId);
+	}
+
+	private List<Track> findTracks(AudioTextSearchTokens tokens, int maxResults) {
+		return findCached(tokens, maxResults, Branch.TRACKS, searchRepository::findTracksByIds, () -> searchIndex.isReady() 
+				? searchRepository.findTracksByIds(searchIndex.findTrackIds(tokens, maxResults)) 
+				: searchRepository.findTracksByTokens(tokens, maxResults), Track::getId);
+	}
+
+	/**
+	 * Loads the entities by the cached IDs or searches them and caches their IDs
+	 */
+	private <T> List<T> findCached(AudioTextSearchTokens tokens, int maxResults, Branch branch, Function<List<Long>, List<T>> loader, Supplier<List<T>> search, Function<T, Long> idFunction) {
+		AudioTextSearchResultCache.Key key = resultCache.createKey(tokens, maxResults);
+		// read before searching: a result of an outdated catalog is not cached
+		long version = resultCache.getVersion();
+		List<Long> ids = resultCache.get(key, branch);
+		if (ids != null) {
+			return loader.apply(ids);
+		}
+		List<T> entities = search.get();
+		resultCache.put(key, branch, version, entities.stream().map(idFunction).toList());
+		return entities;
+	}
+
 }
@@ -15,29 +15,65 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 import javax.annotation.Nullable;
+import javax.sql.DataSource;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import de.kobich.audiosolutions.core.AudioSolutions.DBConnectionSetting;
+import de.kobich.audiosolutions.core.AudioSolutions.DBDataSourceMode;
 import de.kobich.audiosolutions.core.service.AudioAttribute;
+import de.kobich.audiosolutions.core.service.AudioData;
 import de.kobich.audiosolutions.core.service.AudioDataChange;
 import de.kobich.audiosolutions.core.service.AudioException;
+import de.kobich.audiosolutions.core.service.RatingType;
 import de.kobich.audiosolutions.core.service.TestUtils;
+import de.kobich.audiosolutions.core.service.backup.DatabaseBackupService;
 import de.kobich.audiosolutions.core.service.data.AudioDataService;
+import de.kobich.audiosolutions.core.service.describe.AudioDescriptionService;
+import de.kobich.audiosolutions.core.service.describe.AudioDescriptionType;
+import de.kobich.audiosolutions.core.service.describe.SetAudioDescriptionRequest;
+import de.kobich.audiosolutions.core.service.descriptor.PersistedFileFilter;
 import de.kobich.audiosolutions.core.service.persist.AudioPersistenceService;
+import de.kobich.audiosolutions.core.service.persist.DatabaseMaintenanceService;
+import de.kobich.audiosolutions.core.service.persist.DatabaseMaintenanceService.DatabaseSettings;
+import de.kobich.audiosolutions.core.service.persist.DatabaseMaintenanceService.DatabaseStatistics;
+import de.kobich.audiosolutions.core.service.persist.PartitionSizer;
+import de.kobich.audiosolutions.core.service.persist.repository.TrackSearchRepository;
 import de.kobich.audiosolutions.core.service.playlist.EditablePlaylist;
 import de.kobich.audiosolutions.core.service.playlist.PlaylistService;
+import de.kobich.audiosolutions.core.service.search.AudioSearchQuery;
+import de.kobich.audiosolutions.core.service.search.AudioSearchService;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchExecutor;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchIndex;
 import de.kobich.audiosolutions.core.service.search.AudioTextSearchResult;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchResultCache;
 import de.kobich.audiosolutions.core.service.search.AudioTextSearchService;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.SysoutProgressMonitor;
@@ -46,6 +82,7 @@ import de.kobich.commons.utils.SQLUtils.DBTable;
 import de.kobich.commons.utils.SQLUtils.DBTableColumn;
 import de.kobich.commons.utils.SQLUtils.DBTablePK;
 import de.kobich.component.file.FileDescriptor;
+import jakarta.persistence.EntityManagerFactory;
 
 public class AudioSolutionsTest {
 	private static final Logger logger = Logger.getLogger(AudioSolutionsTest.class);
@@ -55,6 +92,10 @@ public class AudioSolutionsTest {
 	@AfterEach
 	public void shutdown() {
 		AudioSolutions.shutdown();
+		System.clearProperty(AudioSolutions.DB_DATASOURCE_PROP);
+		System.clearProperty(AudioSolutions.DB_BACKUP_RETENTION_PROP);
+		System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+		System.clearProperty(AudioSolutions.SEARCH_CACHE_SIZE_PROP);
 	}
 	
 	@Test
@@ -186,6 +227,63 @@ public class AudioSolutionsTest {
 		createTestData();
 	}
 	
+	@Test
+	public void testBackup() throws Exception {
+		System.setProperty(AudioSolutions.DB_BACKUP_RETENTION_PROP, "2");
+		File rootDir = createRootDir("backup", null);
+		startAudioSolutions(rootDir);
+		createTestData();
+		
+		DatabaseBackupService backupService = AudioSolutions.getService(DatabaseBackupService.class);
+		File backupFile1 = backupService.backup(PROGRESS_MONITOR);
+		File backupFile2 = backupService.backup(PROGRESS_MONITOR);
+		File backupFile3 = backupService.backup(PROGRESS_MONITOR);
+		assertEquals(List.of(backupFile3, backupFile2), backupService.getBackupFiles());
+		assertFalse(backupFile1.exists());
+		backupService.verify(backupFile3, PROGRESS_MONITOR);
+		
+		FileUtils.writeStringToFile(backupFile2, "corrupted", "UTF-8");
+		assertThrows(AudioException.class, () -> backupService.verify(backupFile2, PROGRESS_MONITOR));
+	}
+	
+	@Test
+	public void testRestore() throws Exception {
+		File rootDir1 = createRootDir("restore_1", null);
+		startAudioSolutions(rootDir1);
+		createTestData();
+		File backupFile = AudioSolutions.getService(DatabaseBackupService.class).backup(PROGRESS_MONITOR);
+		AudioSolutions.shutdown();
+		
+		// two root directories are required because the root directory is locked
+		File rootDir2 = createRootDir("restore_2", null);
+		assertEquals(AudioSolutionsStatus.INITIALIZED, AudioSolutions.init(rootDir2));
+		AudioSolutions.restore(backupFile, PROGRESS_MONITOR);
+		assertEquals(AudioSolutions.CURRENT_VERSION.getLabel(), AudioSolutions.getCurrentVersion().orElse("unknown"));
+		AudioSolutions.initSpringContext();
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		assertEquals(3, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.ARTIST));
+	}
+	
+	@Test
+	public void testRestoreOldVersion() throws Exception {
+		// the migration creates a backup of the v8 database
+		File rootDir1 = createRootDir("restore_v8_1", "/data/8.0/audiosolutions/");
+		assertEquals(AudioSolutionsStatus.VERSION_MISMATCH, AudioSolutions.init(rootDir1));
+		AudioSolutions.migrate(PROGRESS_MONITOR);
+		File backupFile = AudioSolutions.getDatabaseBackup().getBackupFiles().get(0);
+		AudioSolutions.shutdown();
+		
+		File rootDir2 = createRootDir("restore_v8_2", null);
+		assertEquals(AudioSolutionsStatus.INITIALIZED, AudioSolutions.init(rootDir2));
+		AudioSolutions.restore(backupFile, PROGRESS_MONITOR);
+		// the restored database is migrated from its own version
+		assertEquals(AudioSolutions.CURRENT_VERSION.getLabel(), AudioSolutions.getCurrentVersion().orElse("unknown"));
+		AudioSolutions.initSpringContext();
+		validateDatabase();
+		createTestData();
+	}
+	
 	@Test
 	public void testPerformanceSearch() throws Exception {
 		URL resource = AudioSolutionsTest.class.getResource("/data/8.0/audiosolutions_all/");
@@ -223,6 +321,564 @@ public class AudioSolutionsTest {
 		//
 	}
 	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceAlbumIndex() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.albums=500000
+		final int ALBUM_COUNT = Integer.getInteger("audiosolutions.benchmark.albums", 50000);
+		final int LOOKUP_COUNT = 50;
+		File rootDir = createRootDir("album_index", null);
+		startAudioSolutions(rootDir);
+		createTestData();
+		
+		DBConnectionSetting dbConnectionSetting = AudioSolutions.getDbConnectionSetting();
+		try (Connection connection = DriverManager.getConnection(dbConnectionSetting.url(), dbConnectionSetting.user(), dbConnectionSetting.password());
+				Statement stmt = connection.createStatement()) {
+			long mediumId;
+			try (ResultSet rs = stmt.executeQuery("SELECT MIN(id) FROM medium")) {
+				assertTrue(rs.next());
+				mediumId = rs.getLong(1);
+			}
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO album (id, name, medium_id) VALUES (?, ?, ?)")) {
+				for (int i = 0; i < ALBUM_COUNT; ++i) {
+					insert.setLong(1, 1000000L + i);
+					insert.setString(2, "Album " + i);
+					insert.setLong(3, mediumId);
+					insert.addBatch();
+					if (i % 1000 == 999 || i == ALBUM_COUNT - 1) {
+						insert.executeBatch();
+					}
+				}
+			}
+			
+			long indexMillis = lookupAlbums(connection, mediumId, ALBUM_COUNT, LOOKUP_COUNT);
+			stmt.execute("DROP INDEX IDX_album_name_medium");
+			long noIndexMillis = lookupAlbums(connection, mediumId, ALBUM_COUNT, LOOKUP_COUNT);
+			stmt.execute("CREATE INDEX IDX_album_name_medium ON album (name, medium_id)");
+			stmt.execute("DELETE FROM album WHERE id >= 1000000");
+			logger.info(String.format("%d album lookups (%d albums) take: %dms with index, %dms without index", LOOKUP_COUNT, ALBUM_COUNT, indexMillis, noIndexMillis));
+		}
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceDataSource() throws Exception {
+		final int TRANSACTION_COUNT = 1000;
+		// warm-up: class loading and JIT should not be measured for the first data source
+		benchmarkDataSource(DBDataSourceMode.DIRECT, "warmup", TRANSACTION_COUNT);
+		for (DBDataSourceMode mode : DBDataSourceMode.values()) {
+			benchmarkDataSource(mode, mode.name().toLowerCase(), TRANSACTION_COUNT);
+		}
+	}
+	
+	private void benchmarkDataSource(DBDataSourceMode mode, String name, int transactionCount) throws Exception {
+		System.setProperty(AudioSolutions.DB_DATASOURCE_PROP, mode.name());
+		File rootDir = createRootDir("datasource_" + name, null);
+		assertEquals(AudioSolutionsStatus.INITIALIZED, AudioSolutions.init(rootDir));
+		
+		// startup: spring context and first transaction
+		StopWatch startupWatch = StopWatch.createStarted();
+		AudioSolutions.initSpringContext();
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		assertEquals(0, persistenceService.getCount(AudioAttribute.TRACK));
+		long startupMillis = startupWatch.getTime(TimeUnit.MILLISECONDS);
+		
+		createTestData();
+		Set<FileDescriptor> stones = AudioSolutions.getService(AudioSearchService.class).searchByArtists(Set.of(TestUtils.STONES), PROGRESS_MONITOR);
+		List<FileDescriptor> fileDescriptors = List.of(stones.iterator().next());
+		AudioDescriptionService descriptionService = AudioSolutions.getService(AudioDescriptionService.class);
+		
+		// short transactions
+		StopWatch transactionWatch = StopWatch.createStarted();
+		for (int i = 0; i < transactionCount; ++i) {
+			assertTrue(descriptionService.setAudioDescription(new SetAudioDescriptionRequest(AudioDescriptionType.TRACK, fileDescriptors, "description " + i)));
+		}
+		long transactionMillis = transactionWatch.getTime(TimeUnit.MILLISECONDS);
+		AudioSolutions.shutdown();
+		logger.info(String.format("Data source %s: startup takes %dms, %d transactions take %dms", name, startupMillis, transactionCount, transactionMillis));
+	}
+	
+	@Test
+	public void testDatabaseSettings() throws Exception {
+		File rootDir = createRootDir("settings", null);
+		startAudioSolutions(rootDir);
+		
+		DatabaseMaintenanceService maintenanceService = AudioSolutions.getService(DatabaseMaintenanceService.class);
+		DatabaseSettings settings = maintenanceService.getSettings();
+		DatabaseSettings newSettings = new DatabaseSettings(settings.cacheRows() * 2, settings.cacheSizeKB() * 2, !settings.nioDataFile(), settings.logSizeMB() * 2, 30);
+		maintenanceService.setSettings(newSettings);
+		assertEquals(newSettings, maintenanceService.getSettings());
+		maintenanceService.setSettings(settings);
+		assertEquals(settings, maintenanceService.getSettings());
+	}
+	
+	@Test
+	public void testResetTransactionLog() throws Exception {
+		File rootDir = createRootDir("transaction_log", null);
+		startAudioSolutions(rootDir);
+		// an aborted bulk import leaves the transaction log switched off
+		try (Connection connection = AudioSolutions.getService(DataSource.class).getConnection();
+				Statement stmt = connection.createStatement()) {
+			stmt.execute("SET FILES LOG FALSE");
+		}
+		AudioSolutions.shutdown();
+		
+		startAudioSolutions(rootDir);
+		try (Connection connection = AudioSolutions.getService(DataSource.class).getConnection();
+				Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES WHERE PROPERTY_NAME = 'hsqldb.log_data'")) {
+			assertTrue(rs.next());
+			assertTrue(Boolean.parseBoolean(rs.getString(1)));
+		}
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceDefragmentation() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.albums=500000
+		final int ALBUM_COUNT = Integer.getInteger("audiosolutions.benchmark.albums", 50000);
+		final int QUERY_COUNT = 20;
+		File rootDir = createRootDir("defragmentation", null);
+		startAudioSolutions(rootDir);
+		createTestData();
+		
+		DBConnectionSetting dbConnectionSetting = AudioSolutions.getDbConnectionSetting();
+		try (Connection connection = DriverManager.getConnection(dbConnectionSetting.url(), dbConnectionSetting.user(), dbConnectionSetting.password());
+				Statement stmt = connection.createStatement()) {
+			long mediumId;
+			try (ResultSet rs = stmt.executeQuery("SELECT MIN(id) FROM medium")) {
+				assertTrue(rs.next());
+				mediumId = rs.getLong(1);
+			}
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO album (id, name, description, medium_id) VALUES (?, ?, ?, ?)")) {
+				for (int i = 0; i < ALBUM_COUNT; ++i) {
+					insert.setLong(1, 1000000L + i);
+					insert.setString(2, "Album " + i);
+					insert.setString(3, "Description of album " + i + " ".repeat(100));
+					insert.setLong(4, mediumId);
+					insert.addBatch();
+					if (i % 1000 == 999 || i == ALBUM_COUNT - 1) {
+						insert.executeBatch();
+					}
+				}
+			}
+			// deleted rows leave unused space 
+			stmt.execute("DELETE FROM album WHERE id >= 1000000 AND MOD(id, 10) <> 0");
+			stmt.execute("CHECKPOINT");
+			
+			DatabaseMaintenanceService maintenanceService = AudioSolutions.getService(DatabaseMaintenanceService.class);
+			DatabaseStatistics before = maintenanceService.getStatistics().orElseThrow();
+			// warm-up
+			scanAlbums(connection, QUERY_COUNT);
+			long beforeMillis = scanAlbums(connection, QUERY_COUNT);
+			assertTrue(maintenanceService.defragmentIfRequired(DatabaseMaintenanceService.DEFAULT_FRAGMENTATION_THRESHOLD, PROGRESS_MONITOR));
+			DatabaseStatistics after = maintenanceService.getStatistics().orElseThrow();
+			long afterMillis = scanAlbums(connection, QUERY_COUNT);
+			assertFalse(maintenanceService.defragmentIfRequired(DatabaseMaintenanceService.DEFAULT_FRAGMENTATION_THRESHOLD, PROGRESS_MONITOR));
+			assertTrue(after.dataFileSize() < before.dataFileSize());
+			assertTrue(after.fragmentation() < before.fragmentation());
+			stmt.execute("DELETE FROM album WHERE id >= 1000000");
+			logger.info(String.format("Before defragmentation: %d bytes, %.0f%% fragmented, %d scans take %dms", before.dataFileSize(), before.fragmentation() * 100, QUERY_COUNT, beforeMillis));
+			logger.info(String.format("After defragmentation: %d bytes, %.0f%% fragmented, %d scans take %dms", after.dataFileSize(), after.fragmentation() * 100, QUERY_COUNT, afterMillis));
+		}
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceBulkImport() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.tracks=500000
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("bulk_import", null);
+		startAudioSolutions(rootDir);
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		// warm-up
+		persistenceService.persist(createManyFiles(1000, "warmup"), PROGRESS_MONITOR);
+		persistenceService.removeAll();
+		
+		Set<FileDescriptor> files = createManyFiles(TRACK_COUNT, "persist");
+		StopWatch watch = StopWatch.createStarted();
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		long millis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+		assertEquals(TRACK_COUNT, persistenceService.getCount(AudioAttribute.TRACK));
+		persistenceService.removeAll();
+		
+		Set<FileDescriptor> bulkFiles = createManyFiles(TRACK_COUNT, "bulk");
+		watch = StopWatch.createStarted();
+		persistenceService.persistBulk(bulkFiles, PROGRESS_MONITOR);
+		long bulkMillis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+		assertEquals(TRACK_COUNT, persistenceService.getCount(AudioAttribute.TRACK));
+		logger.info(String.format("Import of %d tracks: persist() takes %dms (%d tracks/s), persistBulk() takes %dms (%d tracks/s)", 
+				TRACK_COUNT, millis, TRACK_COUNT * 1000L / millis, bulkMillis, TRACK_COUNT * 1000L / bulkMillis));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceStreamingSearch() throws Exception {
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("streaming_search", null);
+		startAudioSolutions(rootDir);
+		AudioSolutions.getService(AudioPersistenceService.class).persistBulk(createManyFiles(TRACK_COUNT, "streaming"), PROGRESS_MONITOR);
+		AudioSearchService searchService = AudioSolutions.getService(AudioSearchService.class);
+		AudioSearchQuery query = AudioSearchQuery.builder().build();
+		// warm-up
+		searchService.search(query, null);
+		searchService.search(query, file -> {}, null);
+		
+		StopWatch watch = StopWatch.createStarted();
+		Set<FileDescriptor> files = searchService.search(query, null);
+		long listMillis = watch.getTime(TimeUnit.MILLISECONDS);
+		assertEquals(TRACK_COUNT, files.size());
+		files = null;
+		
+		AtomicLong firstMillis = new AtomicLong(-1);
+		StopWatch streamWatch = StopWatch.createStarted();
+		int count = searchService.search(query, file -> firstMillis.compareAndSet(-1, streamWatch.getTime(TimeUnit.MILLISECONDS)), null);
+		long streamMillis = streamWatch.getTime(TimeUnit.MILLISECONDS);
+		assertEquals(TRACK_COUNT, count);
+		logger.info(String.format("Search of %d tracks: list takes %dms (first result after %dms), streaming takes %dms (first result after %dms)", 
+				TRACK_COUNT, listMillis, listMillis, streamMillis, firstMillis.get()));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceProjectionSearch() throws Exception {
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("projection_search", null);
+		startAudioSolutions(rootDir);
+		AudioSolutions.getService(AudioPersistenceService.class).persistBulk(createManyFiles(TRACK_COUNT, "projection"), PROGRESS_MONITOR);
+		TrackSearchRepository trackSearchRepository = AudioSolutions.getService(TrackSearchRepository.class);
+		AudioSearchQuery query = AudioSearchQuery.builder().build();
+		for (int i = 0; i < 2; ++ i) {
+			// first run: warm-up
+			StopWatch watch = StopWatch.createStarted();
+			List<AudioData> entityData = trackSearchRepository.findByQuery(query).stream().map(AudioData::new).toList();
+			long entityMillis = watch.getTime(TimeUnit.MILLISECONDS);
+			assertEquals(TRACK_COUNT, entityData.size());
+			entityData = null;
+			
+			watch = StopWatch.createStarted();
+			List<AudioData> viewData = trackSearchRepository.findViewsByQuery(query).stream().map(AudioData::new).toList();
+			long viewMillis = watch.getTime(TimeUnit.MILLISECONDS);
+			assertEquals(TRACK_COUNT, viewData.size());
+			viewData = null;
+			logger.info(String.format("Search of %d tracks: entities take %dms, projection takes %dms", TRACK_COUNT, entityMillis, viewMillis));
+		}
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceTextSearch() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.tracks=1000000
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		final int SEARCH_COUNT = 20;
+		File rootDir = createRootDir("text_search", null);
+		// repeated searches would only measure the cache
+		System.setProperty(AudioSolutions.SEARCH_CACHE_SIZE_PROP, "0");
+		startAudioSolutions(rootDir);
+		AudioSolutions.getService(AudioPersistenceService.class).persistBulk(createManyFiles(TRACK_COUNT, "text"), PROGRESS_MONITOR);
+		AudioTextSearchIndex searchIndex = AudioSolutions.getService(AudioTextSearchIndex.class);
+		StopWatch watch = StopWatch.createStarted();
+		searchIndex.build();
+		logger.info(String.format("Index of %d tracks built in %dms", TRACK_COUNT, watch.getTime(TimeUnit.MILLISECONDS)));
+		
+		AudioTextSearchService searchService = AudioSolutions.getService(AudioTextSearchService.class);
+		for (String input : List.of("track 0012", "artist: 42 album: 17", "cd 4 -genre: 1", "zzz")) {
+			long indexMillis = benchmarkTextSearch(searchService, input, SEARCH_COUNT);
+			System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+			long sqlMillis = benchmarkTextSearch(searchService, input, SEARCH_COUNT);
+			System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+			logger.info(String.format("Text search <%s> of %d tracks: SQL takes %.1fms, index takes %.1fms", 
+					input, TRACK_COUNT, (double) sqlMillis / SEARCH_COUNT, (double) indexMillis / SEARCH_COUNT));
+		}
+		
+		System.clearProperty(AudioSolutions.SEARCH_CACHE_SIZE_PROP);
+		System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+		AudioTextSearchResultCache resultCache = AudioSolutions.getService(AudioTextSearchResultCache.class);
+		for (String input : List.of("track 0012", "artist: 42 album: 17", "cd 4 -genre: 1", "zzz")) {
+			resultCache.resetStatistics();
+			long cachedMillis = benchmarkTextSearch(searchService, input, SEARCH_COUNT);
+			AudioTextSearchResultCache.CacheStatistics statistics = resultCache.getStatistics();
+			logger.info(String.format("Text search <%s> of %d tracks: cached SQL takes %.1fms (hit ratio %.2f, %d bytes)", 
+					input, TRACK_COUNT, (double) cachedMillis / SEARCH_COUNT, statistics.hitRatio(), statistics.memoryBytes()));
+		}
+		System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+		
+		AudioSearchService audioSearchService = AudioSolutions.getService(AudioSearchService.class);
+		for (AudioAttribute attribute : List.of(AudioAttribute.ARTIST, AudioAttribute.ALBUM, AudioAttribute.TRACK)) {
+			long indexMillis = benchmarkProposals(audioSearchService, attribute, SEARCH_COUNT);
+			System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+			long sqlMillis = benchmarkProposals(audioSearchService, attribute, SEARCH_COUNT);
+			System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+			logger.info(String.format("Proposals of %s (%d tracks): SQL takes %.1fms, index takes %.1fms", 
+					attribute, TRACK_COUNT, (double) sqlMillis / SEARCH_COUNT, (double) indexMillis / SEARCH_COUNT));
+		}
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceConcurrentTextSearch() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.tracks=200000 -Daudiosolutions.benchmark.callers=16
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		final int CALLER_COUNT = Integer.getInteger("audiosolutions.benchmark.callers", 8);
+		final int SEARCH_COUNT = 10;
+		File rootDir = createRootDir("concurrent_search", null);
+		System.setProperty(AudioSolutions.SEARCH_CACHE_SIZE_PROP, "0");
+		startAudioSolutions(rootDir);
+		AudioSolutions.getService(AudioPersistenceService.class).persistBulk(createManyFiles(TRACK_COUNT, "concurrent"), PROGRESS_MONITOR);
+		// the database branches are the expensive ones
+		System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+		
+		AudioTextSearchService searchService = AudioSolutions.getService(AudioTextSearchService.class);
+		AudioTextSearchExecutor searchExecutor = AudioSolutions.getService(AudioTextSearchExecutor.class);
+		List<String> inputs = List.of("track 0012", "artist: 42 album: 17", "cd 4 -genre: 1");
+		long sequentialMillis = benchmarkConcurrentTextSearch(CALLER_COUNT, SEARCH_COUNT, i -> searchService.search(inputs.get(i % inputs.size()), 20));
+		searchExecutor.resetStatistics();
+		long parallelMillis = benchmarkConcurrentTextSearch(CALLER_COUNT, SEARCH_COUNT, i -> searchService.searchSimultaneously(inputs.get(i % inputs.size()), 20));
+		logger.info(String.format("%d callers searching %d tracks: search() takes %.1fms, searchSimultaneously() takes %.1fms per search", 
+				CALLER_COUNT, TRACK_COUNT, (double) sequentialMillis / SEARCH_COUNT, (double) parallelMillis / SEARCH_COUNT));
+		for (AudioTextSearchExecutor.BranchStatistics statistics : searchExecutor.getStatistics()) {
+			logger.info(String.format("  Branch %s: %.1fms avg, %dms max", statistics.branch(), statistics.averageMillis(), statistics.maxMillis()));
+		}
+	}
+	
+	private interface SearchCall {
+		void search(int index) throws AudioException;
+	}
+	
+	/**
+	 * Runs the searches on several callers at the same time
+	 * @return the average duration of all searches of one caller
+	 */
+	private long benchmarkConcurrentTextSearch(int callerCount, int searchCount, SearchCall call) throws Exception {
+		// warm-up
+		call.search(0);
+		ExecutorService callers = Executors.newFixedThreadPool(callerCount);
+		try {
+			List<Future<Long>> durations = new ArrayList<>();
+			for (int caller = 0; caller < callerCount; ++ caller) {
+				final int offset = caller;
+				durations.add(callers.submit(() -> {
+					StopWatch watch = StopWatch.createStarted();
+					for (int i = 0; i < searchCount; ++ i) {
+						call.search(offset + i);
+					}
+					return watch.getTime(TimeUnit.MILLISECONDS);
+				}));
+			}
+			long totalMillis = 0;
+			for (Future<Long> duration : durations) {
+				totalMillis += duration.get();
+			}
+			return totalMillis / callerCount;
+		}
+		finally {
+			callers.shutdown();
+		}
+	}
+	
+	private long benchmarkProposals(AudioSearchService searchService, AudioAttribute attribute, int searchCount) {
+		// prefixes typed one char after the other
+		List<String> prefixes = List.of("", "a", "al", "alb", "t", "tr", "track 00");
+		prefixes.forEach(prefix -> searchService.searchProposals(attribute, prefix, 10));
+		StopWatch watch = StopWatch.createStarted();
+		for (int i = 0; i < searchCount; ++ i) {
+			prefixes.forEach(prefix -> searchService.searchProposals(attribute, prefix, 10));
+		}
+		return watch.getTime(TimeUnit.MILLISECONDS);
+	}
+	
+	private long benchmarkTextSearch(AudioTextSearchService searchService, String input, int searchCount) throws AudioException {
+		// warm-up
+		searchService.search(input, 20);
+		StopWatch watch = StopWatch.createStarted();
+		for (int i = 0; i < searchCount; ++ i) {
+			searchService.search(input, 20);
+		}
+		return watch.getTime(TimeUnit.MILLISECONDS);
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceDelete() throws Exception {
+		// e.g. -Daudiosolutions.benchmark.tracks=500000
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("delete", null);
+		startAudioSolutions(rootDir);
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		AudioDataService dataService = AudioSolutions.getService(AudioDataService.class);
+		
+		Set<FileDescriptor> files = createManyFiles(TRACK_COUNT, "delete");
+		persistenceService.persistBulk(files, PROGRESS_MONITOR);
+		dataService.removeAudioData(files, PROGRESS_MONITOR);
+		StopWatch watch = StopWatch.createStarted();
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		long removedMillis = watch.getTime(TimeUnit.MILLISECONDS);
+		assertEquals(0, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(0, persistenceService.getCount(AudioAttribute.ALBUM));
+		
+		persistenceService.persistBulk(createManyFiles(TRACK_COUNT, "removeAll"), PROGRESS_MONITOR);
+		watch = StopWatch.createStarted();
+		persistenceService.removeAll();
+		long removeAllMillis = watch.getTime(TimeUnit.MILLISECONDS);
+		assertEquals(0, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(0, persistenceService.getCount(AudioAttribute.MEDIUM));
+		logger.info(String.format("Delete of %d tracks: removed files take %dms, removeAll() takes %dms", TRACK_COUNT, removedMillis, removeAllMillis));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformanceModify() throws Exception {
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("modify", null);
+		startAudioSolutions(rootDir);
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		AudioDataService dataService = AudioSolutions.getService(AudioDataService.class);
+		Statistics statistics = AudioSolutions.getService(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+		
+		Set<FileDescriptor> files = createManyFiles(TRACK_COUNT, "modify");
+		persistenceService.persistBulk(files, PROGRESS_MONITOR);
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (FileDescriptor file : files) {
+			changes.add(AudioDataChange.builder().fileDescriptor(file).rating(RatingType.HIGH).build());
+		}
+		dataService.applyChanges(changes, PROGRESS_MONITOR);
+		statistics.clear();
+		StopWatch watch = StopWatch.createStarted();
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		long millis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+		assertTrue(files.stream().allMatch(f -> f.getMetaData(AudioData.class).getRating().orElseThrow() == RatingType.HIGH));
+		logger.info(String.format("Modification of %d tracks takes %dms (%d tracks/s) and %d SQL statements", 
+				TRACK_COUNT, millis, TRACK_COUNT * 1000L / millis, statistics.getPrepareStatementCount()));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformancePartitioning() throws Exception {
+		final int TRACK_COUNT = Integer.getInteger("audiosolutions.benchmark.tracks", 20000);
+		File rootDir = createRootDir("partitioning", null);
+		startAudioSolutions(rootDir);
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		
+		// insert: fixed vs. adaptive partition size
+		benchmarkPartitioning("Insert", createManyFiles(TRACK_COUNT, "partitioning"), PartitionSizer.fixed(1000));
+		persistenceService.removeAll();
+		Set<FileDescriptor> files = createManyFiles(TRACK_COUNT, "partitioning");
+		benchmarkPartitioning("Insert", files, PartitionSizer.adaptive());
+		
+		// modify: fixed vs. adaptive partition size
+		changeRating(files, RatingType.HIGH);
+		benchmarkPartitioning("Modify", files, PartitionSizer.fixed(1000));
+		changeRating(files, RatingType.LOW);
+		benchmarkPartitioning("Modify", files, PartitionSizer.adaptive());
+	}
+	
+	@ParameterizedTest
+	@ValueSource(ints = { 10000, 100000, 1000000 })
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	public void testPerformancePersistedFileFilter(int trackCount) throws Exception {
+		File rootDir = createRootDir("filefilter_" + trackCount, null);
+		startAudioSolutions(rootDir);
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		Set<FileDescriptor> files = createManyFiles(trackCount, "filefilter");
+		persistenceService.persistBulk(files, PROGRESS_MONITOR);
+		
+		// scan with persisted and new files (directory by directory)
+		final File startDirectory = new File("/filefilter");
+		List<File> scannedFiles = new ArrayList<>();
+		for (FileDescriptor file : files) {
+			scannedFiles.add(file.getFile());
+			scannedFiles.add(new File(file.getFile().getParentFile().getParentFile(), "New " + file.getFile().getParentFile().getName() + "/" + file.getFileName()));
+		}
+		Collections.sort(scannedFiles);
+		
+		// previous implementation: list of all paths (extrapolated from a sample)
+		final int SAMPLE_SIZE = Math.min(scannedFiles.size(), 1000);
+		StopWatch watch = StopWatch.createStarted();
+		List<String> fileNames = persistenceService.getFilenames(startDirectory);
+		long loadMillis = watch.getTime(TimeUnit.MILLISECONDS);
+		watch = StopWatch.createStarted();
+		long sampleCount = IntStream.range(0, SAMPLE_SIZE).mapToObj(i -> scannedFiles.get(i * scannedFiles.size() / SAMPLE_SIZE)).filter(f -> fileNames.contains(f.getAbsolutePath())).count();
+		long estimatedMillis = loadMillis + watch.getTime(TimeUnit.MILLISECONDS) * scannedFiles.size() / SAMPLE_SIZE;
+		logger.info(String.format("List filter of %d paths: estimated %dms (%d of %d sampled files accepted)", trackCount, estimatedMillis, sampleCount, SAMPLE_SIZE));
+		
+		for (boolean useBloomFilter : List.of(false, true)) {
+			long usedMemory = getUsedMemory();
+			watch = StopWatch.createStarted();
+			PersistedFileFilter filter = new PersistedFileFilter(startDirectory, persistenceService, useBloomFilter);
+			long createMillis = watch.getTime(TimeUnit.MILLISECONDS);
+			long count = scannedFiles.stream().filter(filter::accept).count();
+			long millis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+			long filterMemory = getUsedMemory() - usedMemory;
+			assertEquals(trackCount, count);
+			logger.info(String.format("%s filter of %d paths: %dms (creation %dms, %d files/s), %d KB retained", useBloomFilter ? "Bloom" : "Hash", 
+					trackCount, millis, createMillis, scannedFiles.size() * 1000L / millis, filterMemory / 1024));
+			assertTrue(filter.accept(scannedFiles.get(0)));
+		}
+	}
+	
+	private long getUsedMemory() {
+		System.gc();
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+	
+	private void changeRating(Set<FileDescriptor> files, RatingType rating) throws AudioException {
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (FileDescriptor file : files) {
+			changes.add(AudioDataChange.builder().fileDescriptor(file).rating(rating).build());
+		}
+		AudioSolutions.getService(AudioDataService.class).applyChanges(changes, PROGRESS_MONITOR);
+	}
+	
+	private void benchmarkPartitioning(String name, Set<FileDescriptor> files, PartitionSizer partitionSizer) throws AudioException {
+		AudioPersistenceService persistenceService = AudioSolutions.getService(AudioPersistenceService.class);
+		StopWatch watch = StopWatch.createStarted();
+		persistenceService.persist(files, partitionSizer, PROGRESS_MONITOR);
+		long millis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+		List<PartitionSizer.Partition> partitions = partitionSizer.getPartitions();
+		logger.info(String.format("%s of %d tracks (partition size %d-%d) takes %dms (%d tracks/s): %d partitions, sizes %d-%d, max. transaction %dms, max. commit %dms", 
+				name, files.size(), partitionSizer.getMinSize(), partitionSizer.getMaxSize(), millis, files.size() * 1000L / millis, partitions.size(),
+				partitions.stream().mapToInt(PartitionSizer.Partition::size).min().orElse(0), partitions.stream().mapToInt(PartitionSizer.Partition::size).max().orElse(0),
+				partitions.stream().mapToLong(PartitionSizer.Partition::millis).max().orElse(0), partitions.stream().mapToLong(PartitionSizer.Partition::commitMillis).max().orElse(0)));
+	}
+	
+	private Set<FileDescriptor> createManyFiles(int count, String root) throws AudioException {
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < count; ++i) {
+			String fileName = String.format("track %06d.mp3", i);
+			String relativePath = "/Artist " + (i % 500) + "/Album " + (i % 3000) + "/" + fileName;
+			FileDescriptor file = TestUtils.createFileDescriptor("/" + root + relativePath, relativePath);
+			changes.add(AudioDataChange.builder().fileDescriptor(file).artist("Artist " + (i % 500)).album("Album " + (i % 3000)).genre("Genre " + (i % 20)).medium("CD " + (i % 50)).track(fileName).build());
+		}
+		return AudioSolutions.getService(AudioDataService.class).applyChanges(changes, PROGRESS_MONITOR);
+	}
+	
+	private long scanAlbums(Connection connection, int queryCount) throws SQLException {
+		StopWatch watch = StopWatch.createStarted();
+		try (PreparedStatement query = connection.prepareStatement("SELECT COUNT(*) FROM album WHERE description LIKE ?")) {
+			for (int i = 0; i < queryCount; ++i) {
+				query.setString(1, "%album " + i + " %");
+				try (ResultSet rs = query.executeQuery()) {
+					assertTrue(rs.next());
+				}
+			}
+		}
+		return watch.getTime(TimeUnit.MILLISECONDS);
+	}
+	
+	private long lookupAlbums(Connection connection, long mediumId, int albumCount, int lookupCount) throws SQLException {
+		StopWatch watch = StopWatch.createStarted();
+		try (PreparedStatement query = connection.prepareStatement("SELECT id FROM album WHERE name = ? AND medium_id = ?")) {
+			for (int i = 0; i < lookupCount; ++i) {
+				query.setString(1, "Album " + ((i * 7919L) % albumCount));
+				query.setLong(2, mediumId);
+				try (ResultSet rs = query.executeQuery()) {
+					assertTrue(rs.next());
+				}
+			}
+		}
+		return watch.getTime(TimeUnit.MILLISECONDS);
+	}
+	
 	private File createRootDir(String name, @Nullable final String resourcePath) throws IOException, URISyntaxException {
 		File rootDir = TestUtils.getOutputDir("audiosolutions-" + name, true);
 		logger.info("Root dir: " + rootDir);
@@ -283,6 +939,22 @@ public class AudioSolutionsTest {
 				List<DBTablePK> pks = SQLUtils.getPrimaryKeys(connection, table);
 				assertFalse(pks.isEmpty());
 				assertEquals("ID", pks.get(0).columnName());
+				
+				// check ID sequence
+				try (Statement stmt = connection.createStatement(); 
+						ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM INFORMATION_SCHEMA.SEQUENCES where sequence_name = '%s_SEQ'", table.name()))) {
+					assertTrue(rs.next());
+					assertEquals(50, rs.getLong("INCREMENT"));
+				}
+			}
+			
+			// check indexes of lookup columns
+			Set<List<String>> indexedColumns = Set.of(List.of("ALBUM", "NAME"), List.of("GENRE", "NAME"), List.of("TRACK", "ALBUM_ID"), List.of("TRACK", "ARTIST_ID"), List.of("TRACK", "GENRE_ID"));
+			for (List<String> indexedColumn : indexedColumns) {
+				try (Statement stmt = connection.createStatement(); 
+						ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO where table_name = '%s' and column_name = '%s' and ordinal_position = 1", indexedColumn.get(0), indexedColumn.get(1)))) {
+					assertTrue(rs.next(), "Index missing: " + indexedColumn);
+				}
 			}
 		}
 	}
@@ -2,6 +2,7 @@ package de.kobich.audiosolutions.core.service;
 
 import java.util.Properties;
 
+import javax.cache.CacheManager;
 import javax.sql.DataSource;
 
 import org.hibernate.cfg.AvailableSettings;
@@ -22,6 +23,7 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 import com.atomikos.jdbc.AtomikosNonXADataSourceBean;
 
 import de.kobich.SpringComponentScan;
+import de.kobich.audiosolutions.core.AudioSolutionsSpringConfig;
 import jakarta.persistence.EntityManagerFactory;
 
 @TestConfiguration
@@ -85,6 +87,11 @@ public class AudioSolutionsTestSpringConfig {
 //		return m;
 //	}
 	
+	@Bean
+	public CacheManager cacheManager() {
+		return AudioSolutionsSpringConfig.createCacheManager("AudioSolutionsTest");
+	}
+	
 	@Bean
 	public PersistenceExceptionTranslationPostProcessor exceptionTranslation(){
 		return new PersistenceExceptionTranslationPostProcessor();
@@ -100,6 +107,11 @@ public class AudioSolutionsTestSpringConfig {
         hibernateProperties.put(AvailableSettings.SHOW_SQL, true);
         hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
         hibernateProperties.put(AvailableSettings.LOG_SLOW_QUERY, "500");
+        hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, 50);
+        hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+        hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+        hibernateProperties.put(AvailableSettings.BATCH_VERSIONED_DATA, true);
+        AudioSolutionsSpringConfig.putCacheProperties(hibernateProperties, cacheManager());
         return hibernateProperties;
     }
 
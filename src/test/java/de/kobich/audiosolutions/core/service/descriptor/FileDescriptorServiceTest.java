@@ -80,6 +80,15 @@ public class FileDescriptorServiceTest {
 		FileFilter fileFilter = new PersistedFileFilter(importFolder1, persistenceService).negate();
 		files = descriptionService.readFiles(importFolder1, fileFilter, PROGRESS_MONITOR);
 		assertEquals(6, files.size());
+		
+		fileFilter = new PersistedFileFilter(importFolder1, persistenceService, true).negate();
+		files = descriptionService.readFiles(importFolder1, fileFilter, PROGRESS_MONITOR);
+		assertEquals(6, files.size());
+		
+		// files of other directories are not accepted
+		fileFilter = new PersistedFileFilter(new File(rootFolder, "folder2"), persistenceService);
+		files = descriptionService.readFiles(importFolder1, fileFilter, PROGRESS_MONITOR);
+		assertEquals(0, files.size());
 	}
 	
 	@Test
@@ -6,7 +6,12 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -14,18 +19,25 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sun.management.ThreadMXBean;
 
 import de.kobich.audiosolutions.core.service.AlbumIdentity;
 import de.kobich.audiosolutions.core.service.AudioAttribute;
@@ -38,14 +50,22 @@ import de.kobich.audiosolutions.core.service.AudioState;
 import de.kobich.audiosolutions.core.service.RatingType;
 import de.kobich.audiosolutions.core.service.TestUtils;
 import de.kobich.audiosolutions.core.service.data.AudioDataService;
+import de.kobich.audiosolutions.core.service.descriptor.PersistedFileFilter;
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
+import de.kobich.audiosolutions.core.service.persist.domain.Artist;
+import de.kobich.audiosolutions.core.service.persist.domain.Medium;
+import de.kobich.audiosolutions.core.service.persist.repository.ArtistRepository;
+import de.kobich.audiosolutions.core.service.persist.repository.MediumRepository;
 import de.kobich.audiosolutions.core.service.search.AudioSearchQuery;
 import de.kobich.audiosolutions.core.service.search.AudioSearchService;
 import de.kobich.audiosolutions.core.service.search.AudioTextSearchResult;
 import de.kobich.audiosolutions.core.service.search.AudioTextSearchService;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.SysoutProgressMonitor;
+import de.kobich.commons.utils.CloneUtils;
 import de.kobich.component.file.FileDescriptor;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes=AudioSolutionsTestSpringConfig.class)
@@ -60,6 +80,14 @@ public class AudioPersistenceServiceTest {
 	private AudioTextSearchService textSearchService;
 	@Autowired
 	private AudioDataService dataService;
+	@Autowired
+	private ArtistRepository artistRepository;
+	@Autowired
+	private MediumRepository mediumRepository;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
 	
 	@BeforeAll
 	static void init() {
@@ -240,6 +268,281 @@ public class AudioPersistenceServiceTest {
 		assertTrue(albums.get(0).getArtist().isEmpty());
 	}
 	
+	@Test
+	void insertMany_fixedPartitionSize() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < 250; ++i) {
+			changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/track " + i + ".mp3").artist("Rolling Stones").track("track " + i).build());
+		}
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		PartitionSizer partitionSizer = PartitionSizer.fixed(100);
+		persistenceService.persist(files, partitionSizer, PROGRESS_MONITOR);
+		assertEquals(250, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(List.of(100, 100, 50), partitionSizer.getPartitions().stream().map(PartitionSizer.Partition::size).toList());
+		for (PartitionSizer.Partition partition : partitionSizer.getPartitions()) {
+			assertTrue(partition.commitMillis() <= partition.millis());
+		}
+	}
+	
+	@Test
+	void insert_sameFileInTwoPartitions() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/angie.mp3").artist("Rolling Stones").track("angie").build());
+		FileDescriptor file = dataService.applyChanges(changes, PROGRESS_MONITOR).iterator().next();
+		// the commands of both partitions are prepared before the first partition is written
+		PartitionSizer partitionSizer = PartitionSizer.fixed(1);
+		Set<FileDescriptor> files = persistenceService.persist(List.of(file, file), partitionSizer, PROGRESS_MONITOR);
+		assertEquals(Set.of(file), files);
+		assertEquals(2, partitionSizer.getPartitions().size());
+		assertEquals(1, persistenceService.getCount(AudioAttribute.TRACK));
+		assertTrue(file.getMetaData(AudioData.class).getState().isPersistent());
+	}
+	
+	@Test
+	void updateMany_undoFailedPartition() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < 150; ++i) {
+			String fileName = String.format("track %03d.mp3", i);
+			changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/" + fileName).artist("Rolling Stones").track(fileName).build());
+		}
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		FileDescriptor file000 = files.stream().filter(f -> f.getFileName().equals("track 000.mp3")).findFirst().orElseThrow();
+		FileDescriptor file100 = files.stream().filter(f -> f.getFileName().equals("track 100.mp3")).findFirst().orElseThrow();
+		FileDescriptor file101 = files.stream().filter(f -> f.getFileName().equals("track 101.mp3")).findFirst().orElseThrow();
+		FileDescriptor file149 = files.stream().filter(f -> f.getFileName().equals("track 149.mp3")).findFirst().orElseThrow();
+		Long trackId100 = file100.getMetaData(AudioData.class).getTrackId();
+		AlbumIdentity albumIdentity100 = file100.getMetaData(AudioData.class).getAlbumIdentifier().orElseThrow();
+		Long trackId101 = file101.getMetaData(AudioData.class).getTrackId();
+		
+		// change all files, remove one file and let the second partition fail by a track name longer than its column
+		dataService.applyChanges(files.stream().map(f -> AudioDataChange.builder().fileDescriptor(f).rating(RatingType.HIGH).build()).collect(Collectors.toSet()), PROGRESS_MONITOR);
+		dataService.removeAudioData(Set.of(file101), PROGRESS_MONITOR);
+		dataService.applyChanges(Set.of(AudioDataChange.builder().fileDescriptor(file149).track("x".repeat(300)).build()), PROGRESS_MONITOR);
+		PartitionSizer partitionSizer = PartitionSizer.fixed(100);
+		assertThrows(AudioException.class, () -> persistenceService.persist(files, partitionSizer, PROGRESS_MONITOR));
+		assertEquals(150, persistenceService.getCount(AudioAttribute.TRACK));
+		
+		// the first partition is committed
+		assertEquals(AudioState.PERSISTENT_INCOMPLETE, file000.getMetaData(AudioData.class).getState());
+		// the changes of the second partition are undone
+		AudioData audioData100 = file100.getMetaData(AudioData.class);
+		assertEquals(AudioState.PERSISTENT_MODIFIED_INCOMPLETE, audioData100.getState());
+		assertEquals(trackId100, audioData100.getTrackId());
+		assertEquals(albumIdentity100, audioData100.getAlbumIdentifier().orElseThrow());
+		AudioData audioData101 = file101.getMetaData(AudioData.class);
+		assertNotNull(audioData101);
+		assertEquals(AudioState.REMOVED, audioData101.getState());
+		assertEquals(trackId101, audioData101.getTrackId());
+	}
+	
+	@Test
+	void insertMany_adaptivePartitionSize() throws Exception {
+		final int COUNT = 3000;
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < COUNT; ++i) {
+			changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/track " + i + ".mp3").artist("Rolling Stones").track("track " + i).build());
+		}
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		PartitionSizer partitionSizer = PartitionSizer.adaptive(100, 400, Duration.ofSeconds(1));
+		persistenceService.persist(files, partitionSizer, PROGRESS_MONITOR);
+		assertEquals(COUNT, persistenceService.getCount(AudioAttribute.TRACK));
+		List<Integer> sizes = partitionSizer.getPartitions().stream().map(PartitionSizer.Partition::size).toList();
+		assertEquals(400, sizes.get(0));
+		assertTrue(sizes.stream().allMatch(size -> size <= 400));
+		assertEquals(COUNT, sizes.stream().mapToInt(Integer::intValue).sum());
+	}
+	
+	@Test
+	void adaptivePartitionSize() {
+		// 100 files/s: the size is halved down to the min. size
+		PartitionSizer partitionSizer = PartitionSizer.adaptive(100, 2000, Duration.ofSeconds(1));
+		for (int size : List.of(1000, 500, 250, 125, 100)) {
+			assertEquals(size, partitionSizer.getSize());
+			partitionSizer.record(new PartitionSizer.Partition(size, size * 10L, 0));
+		}
+		assertEquals(100, partitionSizer.getSize());
+		
+		// 100000 files/s: the size is doubled up to the max. size
+		for (int size : List.of(100, 200, 400, 800, 1600, 2000)) {
+			assertEquals(size, partitionSizer.getSize());
+			partitionSizer.record(new PartitionSizer.Partition(size, 1, 0));
+		}
+		assertEquals(2000, partitionSizer.getSize());
+		
+		// the last partition is smaller and does not change the size
+		partitionSizer.record(new PartitionSizer.Partition(10, 1000, 0));
+		assertEquals(2000, partitionSizer.getSize());
+		assertEquals(12, partitionSizer.getPartitions().size());
+		
+		PartitionSizer fixedSizer = PartitionSizer.fixed(10);
+		fixedSizer.record(new PartitionSizer.Partition(10, 100000, 0));
+		assertEquals(10, fixedSizer.getSize());
+	}
+	
+	@Test
+	void getFilenames() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/bonus.mp3").artist(TestUtils.STONES).track("bonus").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/start me up.mp3").artist(TestUtils.STONES).album("Tattoo You").track("start me up").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/hang fire.mp3").artist(TestUtils.STONES).album("Tattoo You").track("hang fire").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom2/Rolling Stones/Tattoo You/heaven.mp3").artist(TestUtils.STONES).album("Tattoo You").track("heaven").build());
+		persistenceService.persist(dataService.applyChanges(changes, PROGRESS_MONITOR), PROGRESS_MONITOR);
+		
+		File stonesDir = new File("/cdrom/Rolling Stones");
+		assertEquals(Set.of(new File(stonesDir, "bonus.mp3").getAbsolutePath()), Set.copyOf(persistenceService.getFilenamesInDirectory(stonesDir)));
+		assertEquals(2, persistenceService.getFilenamesInDirectory(new File(stonesDir, "Tattoo You")).size());
+		assertEquals(3, persistenceService.getFilenameCount(new File("/cdrom")));
+		List<String> paths = new ArrayList<>();
+		persistenceService.getFilenames(new File("/cdrom"), paths::add);
+		assertEquals(3, paths.size());
+		
+		for (boolean useBloomFilter : List.of(false, true)) {
+			PersistedFileFilter filter = new PersistedFileFilter(new File("/cdrom"), persistenceService, useBloomFilter);
+			assertTrue(filter.accept(new File("/cdrom/Rolling Stones/bonus.mp3")));
+			assertTrue(filter.accept(new File("/cdrom/Rolling Stones/Tattoo You/hang fire.mp3")));
+			assertFalse(filter.accept(new File("/cdrom/Rolling Stones/Tattoo You/slave.mp3")));
+			assertFalse(filter.accept(new File("/cdrom/Beatles/help.mp3")));
+			assertFalse(filter.accept(new File("/cdrom2/Rolling Stones/Tattoo You/heaven.mp3")));
+		}
+		
+		// the path of a root directory already ends with a separator
+		File rootDir = new File("/cdrom").getAbsoluteFile().getParentFile();
+		assertEquals(4, persistenceService.getFilenameCount(rootDir));
+		assertTrue(new PersistedFileFilter(rootDir, persistenceService).accept(new File("/cdrom2/Rolling Stones/Tattoo You/heaven.mp3")));
+	}
+	
+	@Test
+	void removeAll_secondLevelCache() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/start me up.mp3").artist(TestUtils.STONES).album("Tattoo You").genre("Rock").medium("CD").track("start me up").build());
+		persistenceService.persist(dataService.applyChanges(changes, PROGRESS_MONITOR), PROGRESS_MONITOR);
+		// the entities and the query results are cached (the repositories need a transaction)
+		TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+		readTransaction.setReadOnly(true);
+		Cache cache = entityManagerFactory.getCache();
+		Artist artist = readTransaction.execute(status -> artistRepository.findFirstByName(TestUtils.STONES)).orElseThrow();
+		Medium medium = readTransaction.execute(status -> mediumRepository.findFirstByName("CD")).orElseThrow();
+		assertEquals(1, readTransaction.execute(status -> artistRepository.findAllByNameLikeIgnoreCase("%")).size());
+		assertTrue(cache.contains(Artist.class, artist.getId()));
+		assertTrue(cache.contains(Medium.class, medium.getId()));
+		
+		persistenceService.removeAll();
+		assertFalse(cache.contains(Artist.class, artist.getId()));
+		assertFalse(cache.contains(Medium.class, medium.getId()));
+		assertTrue(readTransaction.execute(status -> artistRepository.findById(artist.getId())).isEmpty());
+		assertTrue(readTransaction.execute(status -> artistRepository.findFirstByName(TestUtils.STONES)).isEmpty());
+		assertTrue(readTransaction.execute(status -> artistRepository.findAllByNameLikeIgnoreCase("%")).isEmpty());
+		assertTrue(readTransaction.execute(status -> mediumRepository.findById(medium.getId())).isEmpty());
+		assertTrue(readTransaction.execute(status -> mediumRepository.findFirstByName("CD")).isEmpty());
+		
+		// the same names are persisted again
+		persistenceService.persist(dataService.applyChanges(changes, PROGRESS_MONITOR), PROGRESS_MONITOR);
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ARTIST));
+		assertEquals(TestUtils.STONES, readTransaction.execute(status -> artistRepository.findFirstByName(TestUtils.STONES)).orElseThrow().getName());
+	}
+	
+	@Test
+	void insertNamesWithTrailingSpaces() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Beatles/yesterday.mp3").artist("Beatles").genre("Pop").track("yesterday").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Beatles/help.mp3").artist("Beatles ").genre("Pop ").track("help").build());
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(2, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ARTIST));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.GENRE));
+		
+		changes.clear();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Beatles/let it be.mp3").artist("Beatles  ").genre("Pop").track("let it be").build());
+		files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(3, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ARTIST));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	void testPerformanceInsertMany() throws Exception {
+		final int COUNT = 3000;
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < COUNT; ++i) {
+			String fileName = String.format("track %04d.mp3", i);
+			changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Artist " + (i % 50) + "/Album " + (i % 300) + "/" + fileName)
+					.artist("Artist " + (i % 50)).album("Album " + (i % 300)).genre("Genre " + (i % 10)).medium("CD " + (i % 5)).track(fileName).build());
+		}
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		
+		StopWatch watch = new StopWatch();
+		watch.start();
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		watch.stop();
+		long millis = Math.max(1, watch.getTime(TimeUnit.MILLISECONDS));
+		logger.info("Method persist() takes: " + millis + "ms (" + (COUNT * 1000L / millis) + " tracks/s)");
+		assertEquals(COUNT, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(300, persistenceService.getCount(AudioAttribute.ALBUM));
+	}
+	
+	@Test
+	void insertBulk_update() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/start me up.mp3").artist(TestUtils.STONES).album("Tattoo You").track("start me up").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/hang fire.mp3").artist(TestUtils.STONES).album("Tattoo You").track("hang fire").build());
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		
+		// bulk import of new and modified files
+		changes.clear();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/waiting on a friend.mp3").artist(TestUtils.STONES).album("Tattoo You").track("waiting on a friend").build());
+		Set<FileDescriptor> bulkFiles = new HashSet<>(dataService.applyChanges(changes, PROGRESS_MONITOR));
+		FileDescriptor modifiedFile = files.iterator().next();
+		dataService.applyChanges(Set.of(AudioDataChange.builder().fileDescriptor(modifiedFile).genre("Rock").build()), PROGRESS_MONITOR);
+		bulkFiles.add(modifiedFile);
+		assertEquals(2, persistenceService.persistBulk(bulkFiles, PROGRESS_MONITOR).size());
+		assertEquals(3, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ALBUM));
+		for (FileDescriptor file : bulkFiles) {
+			AudioData audioData = file.getMetaData(AudioData.class);
+			assertTrue(audioData.getState().isPersistent());
+			assertNotNull(audioData.getTrackId());
+			assertTrue(audioData.getAlbumIdentifier().flatMap(AlbumIdentity::getPersistentId).isPresent());
+		}
+		Long albumId = bulkFiles.iterator().next().getMetaData(AudioData.class).getAlbumIdentifier().flatMap(AlbumIdentity::getPersistentId).orElseThrow();
+		Album album = searchService.searchAlbum(albumId).orElseThrow();
+		assertEquals(TestUtils.STONES, album.getArtist().orElseThrow().getName());
+		
+		// bulk imported tracks can be changed afterwards
+		dataService.applyChanges(Set.of(AudioDataChange.builder().fileDescriptor(bulkFiles.iterator().next()).track("renamed").build()), PROGRESS_MONITOR);
+		persistenceService.persist(bulkFiles, PROGRESS_MONITOR);
+		assertEquals(3, persistenceService.getCount(AudioAttribute.TRACK));
+	}
+	
+	@Test
+	@EnabledIfSystemProperty(named = "audiosolutions.benchmark", matches = "true")
+	void testPerformanceUndoState() throws Exception {
+		final int COUNT = 3000;
+		Set<AudioDataChange> changes = new HashSet<>();
+		for (int i = 0; i < COUNT; ++i) {
+			String fileName = String.format("track %04d.mp3", i);
+			changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Artist/Album " + (i % 300) + "/" + fileName).artist("Artist").album("Album " + (i % 300)).track(fileName).build());
+		}
+		List<AudioData> audioDataList = dataService.applyChanges(changes, PROGRESS_MONITOR).stream().map(f -> f.getMetaData(AudioData.class)).collect(Collectors.toList());
+		
+		// the allocated bytes are only available on HotSpot based JVMs
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		List<Object> backups = new ArrayList<>(COUNT);
+		long bytes = threadBean.getCurrentThreadAllocatedBytes();
+		audioDataList.forEach(ad -> backups.add(CloneUtils.deepCopy(ad)));
+		long deepCopyBytes = threadBean.getCurrentThreadAllocatedBytes() - bytes;
+		backups.clear();
+		bytes = threadBean.getCurrentThreadAllocatedBytes();
+		audioDataList.forEach(ad -> backups.add(ad.getPersistenceState()));
+		long undoStateBytes = threadBean.getCurrentThreadAllocatedBytes() - bytes;
+		logger.info("Backup of " + COUNT + " files allocates: " + (deepCopyBytes / 1024) + "KB (deep copy), " + (undoStateBytes / 1024) + "KB (undo state)");
+		assertTrue(undoStateBytes < deepCopyBytes);
+	}
+	
 	@Test
 	void insert2_errorSameFile() throws Exception {
 		Set<AudioDataChange> changes = new HashSet<>();
@@ -262,6 +565,27 @@ public class AudioPersistenceServiceTest {
 		assertEquals(1, persistenceService.getCount(AudioAttribute.TRACK));
 	}
 
+	@Test
+	void insert3_errorTwoSameFiles() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/memory motel.mp3").artist("Rolling Stones").track("memory motel").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/angie.mp3").artist("Rolling Stones").track("angie").build());
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(2, persistenceService.getCount(AudioAttribute.TRACK));
+		
+		changes.clear();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/angry.mp3").artist("The Rolling Stones").track("angry").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/memory motel.mp3").artist("The Rolling Stones").track("memory motel").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/angie.mp3").artist("The Rolling Stones").track("angie").build());
+		final Set<FileDescriptor> duplicateFiles = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		AudioException exc = assertThrows(AudioException.class, () -> persistenceService.persist(duplicateFiles, PROGRESS_MONITOR));
+		assertEquals(AudioException.DUPLICATE_FILE_ERROR, exc.getErrorCode());
+		changes.forEach(f -> assertFalse(f.getFileDescriptor().getMetaData(AudioData.class).getState().isPersistent()));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ARTIST));
+	}
+	
 	@Test
 	void insert2WithSameFile_checkAudioData() throws Exception {
 		Set<AudioDataChange> changes = new HashSet<>();
@@ -368,6 +692,35 @@ public class AudioPersistenceServiceTest {
 		assertEquals(1, persistenceService.getCount(AudioAttribute.GENRE));
 	}
 
+	@Test
+	void insert2_update1_checkOrphanedMediumGenre() throws Exception {
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/memory motel.mp3").medium("cd 1").genre("Blues").artist("Rolling Stones").track("memory motel").build());
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/The Who/bargain.mp3").medium("cd 2").genre("Rock").artist("The Who").track("bargain").build());
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(2, persistenceService.getCount(AudioAttribute.MEDIUM));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.GENRE));
+		
+		Set<FileDescriptor> foundFiles = searchService.searchByArtists(Set.of("The Who"), PROGRESS_MONITOR);
+		assertEquals(1, foundFiles.size());
+		FileDescriptor file = foundFiles.iterator().next();
+		dataService.applyChanges(Set.of(AudioDataChange.builder().fileDescriptor(file).medium("cd 1").genre("Blues").build()), PROGRESS_MONITOR);
+		persistenceService.persist(foundFiles, PROGRESS_MONITOR);
+		assertEquals(2, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.ALBUM));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.ARTIST));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.MEDIUM));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.GENRE));
+		
+		// nothing left for the full maintenance sweep
+		persistenceService.deleteOrphanedData();
+		assertEquals(2, persistenceService.getCount(AudioAttribute.ALBUM));
+		assertEquals(2, persistenceService.getCount(AudioAttribute.ARTIST));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.MEDIUM));
+		assertEquals(1, persistenceService.getCount(AudioAttribute.GENRE));
+	}
+
 	@Test
 	void testAlbumCollection() throws Exception {
 		final String album = "Best Of Rock";
@@ -403,6 +756,31 @@ public class AudioPersistenceServiceTest {
 		assertEquals(1, persistenceService.getCount(AudioAttribute.GENRE));
 	}
 	
+	@Test
+	void testAlbumCollectionWithDisksInSeparateImports() throws Exception {
+		final String album = "Best Of Rock";
+		Set<AudioDataChange> changes = new HashSet<>();
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Various Artists/Best Of Rock/Disk 1/01-start me up - Rolling Stones.mp3").artist("Rolling Stones").album(album).track("start me up").disk("Disk 1").build());
+		Set<FileDescriptor> files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		files = persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(1, persistenceService.getCount(AudioAttribute.ALBUM));
+		Long disk1AlbumId = files.iterator().next().getMetaData(AudioData.class).getAlbumIdentifier().get().getPersistentId().get();
+		
+		changes.clear();
+		// other disk of the same album
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Various Artists/Best Of Rock/Disk 2/01-bargain - The Who.mp3").artist("The Who").album(album).track("bargain").disk("Disk 2").build());
+		// same album name in another folder
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Various Artists/Other/Best Of Rock/Disk 2/01-angie - Rolling Stones.mp3").artist("Rolling Stones").album(album).track("angie").disk("Disk 2").build());
+		// sub folder of a disk (different folder count)
+		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Various Artists/Best Of Rock/Disk 2/Bonus/01-paint it black - Rolling Stones.mp3").artist("Rolling Stones").album(album).track("paint it black").disk("Disk 2").build());
+		files = dataService.applyChanges(changes, PROGRESS_MONITOR);
+		persistenceService.persist(files, PROGRESS_MONITOR);
+		assertEquals(4, persistenceService.getCount(AudioAttribute.TRACK));
+		assertEquals(3, persistenceService.getCount(AudioAttribute.ALBUM));
+		Set<FileDescriptor> albumFiles = searchService.search(AudioSearchQuery.builder().albumId(disk1AlbumId).build(), PROGRESS_MONITOR);
+		assertEquals(Set.of("01-start me up - Rolling Stones.mp3", "01-bargain - The Who.mp3"), albumFiles.stream().map(FileDescriptor::getFileName).collect(Collectors.toSet()));
+	}
+	
 	@Test
 	void testSameNamedAlbums() throws Exception {
 		final String album = "Best Of";
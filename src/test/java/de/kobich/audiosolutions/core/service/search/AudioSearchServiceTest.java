@@ -4,10 +4,16 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -16,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import de.kobich.audiosolutions.core.AudioSolutions;
 import de.kobich.audiosolutions.core.service.AudioAttribute;
 import de.kobich.audiosolutions.core.service.AudioDataChange;
 import de.kobich.audiosolutions.core.service.AudioException;
@@ -28,6 +35,7 @@ import de.kobich.audiosolutions.core.service.persist.domain.Medium;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.SysoutProgressMonitor;
 import de.kobich.component.file.FileDescriptor;
+import jakarta.persistence.EntityManagerFactory;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes=AudioSolutionsTestSpringConfig.class)
@@ -37,9 +45,11 @@ public class AudioSearchServiceTest {
 	private static final String DSIK_2 = "disk 2";
 	@Autowired
 	private AudioSearchService searchService;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
 
 	@BeforeAll
-	public static void init(@Autowired AudioPersistenceService persistenceService, @Autowired AudioDataService dataService) throws AudioException {
+	public static void init(@Autowired AudioPersistenceService persistenceService, @Autowired AudioDataService dataService, @Autowired AudioTextSearchIndex searchIndex) throws AudioException {
 		Set<AudioDataChange> changes = new HashSet<>();
 		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/memory motel.mp3").medium(CD_1).genre("Rock").artist(TestUtils.STONES).track("memory motel").build());
 		changes.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/start me up.mp3").artist(TestUtils.STONES).album("Tattoo You").track("start me up").build());
@@ -53,6 +63,8 @@ public class AudioSearchServiceTest {
 		assertEquals(5, persistenceService.getCount(AudioAttribute.ALBUM));
 		assertEquals(3, persistenceService.getCount(AudioAttribute.GENRE));
 		assertEquals(3, persistenceService.getCount(AudioAttribute.MEDIUM));
+		searchIndex.build();
+		assertTrue(searchIndex.isReady());
 	}
 	
 	@AfterAll
@@ -103,6 +115,31 @@ public class AudioSearchServiceTest {
 		assertTrue(searchService.searchProposals(AudioAttribute.ARTIST, "xx", 5).isEmpty());
 	}
 
+	@Test
+	public void findProposalsByDatabase() {
+		// the text search index and the database propose the same names (also if there are more names than requested)
+		Map<String, List<String>> proposals = findProposals();
+		System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+		try {
+			assertEquals(proposals, findProposals());
+		}
+		finally {
+			System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+		}
+	}
+	
+	private Map<String, List<String>> findProposals() {
+		Map<String, List<String>> proposals = new HashMap<>();
+		for (AudioAttribute attribute : List.of(AudioAttribute.ARTIST, AudioAttribute.ALBUM, AudioAttribute.TRACK)) {
+			for (String text : List.of("", "e", "es", "roll", "the", "of", "xx")) {
+				for (int maxResultSize : List.of(1, 2, 5)) {
+					proposals.put(attribute + "|" + text + "|" + maxResultSize, searchService.searchProposals(attribute, text, maxResultSize));
+				}
+			}
+		}
+		return proposals;
+	}
+
 	@Test
 	public void findAlbumProposals() {
 		List<String> beg = searchService.searchProposals(AudioAttribute.ALBUM, "beg", 5);
@@ -163,5 +200,54 @@ public class AudioSearchServiceTest {
 		Set<FileDescriptor> all = searchService.search(AudioSearchQuery.builder().build(), PROGRESS_MONITOR);
 		assertEquals(5, all.size());
 	}
+	
+	@Test
+	public void findStreaming() throws AudioException {
+		Set<FileDescriptor> all = new HashSet<>();
+		assertEquals(5, searchService.search(AudioSearchQuery.builder().build(), all::add, PROGRESS_MONITOR));
+		assertEquals(toFiles(searchService.search(AudioSearchQuery.builder().build(), PROGRESS_MONITOR)), toFiles(all));
+		
+		Set<FileDescriptor> stones = new HashSet<>();
+		assertEquals(3, searchService.searchByArtists(Set.of(TestUtils.STONES), stones::add, PROGRESS_MONITOR));
+		assertEquals(toFiles(searchService.searchByArtists(Set.of(TestUtils.STONES), PROGRESS_MONITOR)), toFiles(stones));
+		
+		Set<FileDescriptor> mediums = new HashSet<>();
+		assertEquals(2, searchService.searchByMediums(Set.of(DSIK_2, CD_1), mediums::add, PROGRESS_MONITOR));
+		
+		Set<FileDescriptor> best = new HashSet<>();
+		assertEquals(2, searchService.searchByText("Best", AudioAttribute.ALBUM, best::add, PROGRESS_MONITOR));
+		assertEquals(2, searchService.searchByText("me", AudioAttribute.TRACK, f -> {}, PROGRESS_MONITOR));
+	}
+	
+	@Test
+	public void testPerformanceCachedSearch() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+		
+		statistics.clear();
+		runSearches();
+		long coldStatements = statistics.getPrepareStatementCount();
+		long coldEntityLoads = statistics.getEntityLoadCount();
+		long coldQueryCacheHits = statistics.getQueryCacheHitCount();
+		
+		runSearches();
+		long warmStatements = statistics.getPrepareStatementCount() - coldStatements;
+		System.out.println("Search executes " + coldStatements + " SQL statements (cold cache), " + warmStatements + " (warm cache)");
+		// the second run answers the dimension queries from the cache
+		assertTrue(statistics.getQueryCacheHitCount() > coldQueryCacheHits);
+		assertTrue(warmStatements < coldStatements);
+		assertEquals(coldEntityLoads, statistics.getEntityLoadCount());
+	}
+	
+	private Set<File> toFiles(Set<FileDescriptor> fileDescriptors) {
+		return fileDescriptors.stream().map(FileDescriptor::getFile).collect(Collectors.toSet());
+	}
+	
+	private void runSearches() {
+		assertEquals(3, searchService.searchByArtists(Set.of(TestUtils.STONES), PROGRESS_MONITOR).size());
+		assertEquals(5, searchService.search(AudioSearchQuery.builder().build(), PROGRESS_MONITOR).size());
+		assertEquals(2, searchService.searchProposals(AudioAttribute.ARTIST, "es", 5).size());
+		assertEquals(1, searchService.searchMediums(CD_1).size());
+	}
 
 }
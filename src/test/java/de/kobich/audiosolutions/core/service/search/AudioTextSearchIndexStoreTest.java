@@ -0,0 +1,100 @@
+package de.kobich.audiosolutions.core.service.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.kobich.audiosolutions.core.service.persist.domain.TrackIndexEntry;
+
+public class AudioTextSearchIndexStoreTest {
+	@TempDir
+	public File directory;
+
+	@Test
+	public void testLoadBaseAndDelta() throws IOException {
+		AudioTextSearchIndexStore store = new AudioTextSearchIndexStore(directory);
+		assertFalse(store.load(e -> {}, id -> {}).isPresent());
+		int generation = store.rotate();
+		store.writeBase(generation, 5, List.of(createEntry(1, "memory motel"), createEntry(2, "start me up")));
+		// track 2 removed, track 1 renamed, track 3 added
+		store.append(7, List.of(1L, 2L, 3L), List.of(createEntry(1, "memory"), createEntry(3, "bargain")));
+		store.close();
+
+		Map<Long, TrackIndexEntry> entries = new TreeMap<>();
+		assertEquals(OptionalLong.of(7), new AudioTextSearchIndexStore(directory).load(e -> entries.put(e.id(), e), entries::remove));
+		assertEquals(Set.of(1L, 3L), entries.keySet());
+		assertEquals("memory", entries.get(1L).name());
+	}
+
+	@Test
+	public void testMerge() throws IOException {
+		AudioTextSearchIndexStore store = new AudioTextSearchIndexStore(directory);
+		store.writeBase(store.rotate(), 1, List.of(createEntry(1, "memory motel")));
+		store.append(2, List.of(2L), List.of(createEntry(2, "start me up")));
+		// changes during the merge are written into the next delta segment
+		int generation = store.rotate();
+		store.append(3, List.of(3L), List.of(createEntry(3, "bargain")));
+		store.writeBase(generation, 2, List.of(createEntry(1, "memory motel"), createEntry(2, "start me up")));
+		store.close();
+		assertEquals(2, directory.list().length);
+
+		Map<Long, TrackIndexEntry> entries = load(new AudioTextSearchIndexStore(directory));
+		assertEquals(Set.of(1L, 2L, 3L), entries.keySet());
+	}
+
+	@Test
+	public void testIncompleteDelta() throws IOException {
+		AudioTextSearchIndexStore store = new AudioTextSearchIndexStore(directory);
+		int generation = store.rotate();
+		store.writeBase(generation, 1, List.of(createEntry(1, "memory motel")));
+		store.append(2, List.of(2L), List.of(createEntry(2, "start me up")));
+		store.close();
+		// crash while writing a record
+		try (FileOutputStream out = new FileOutputStream(new File(directory, "delta-" + generation + ".log"), true)) {
+			out.write(new byte[] { 1, 0, 0 });
+		}
+
+		store = new AudioTextSearchIndexStore(directory);
+		Map<Long, TrackIndexEntry> entries = new TreeMap<>();
+		// the revision of the incomplete append is missing
+		assertEquals(OptionalLong.of(2), store.load(e -> entries.put(e.id(), e), entries::remove));
+		assertEquals(Set.of(1L, 2L), entries.keySet());
+		store.append(3, List.of(3L), List.of(createEntry(3, "bargain")));
+		store.close();
+		assertEquals(Set.of(1L, 2L, 3L), load(new AudioTextSearchIndexStore(directory)).keySet());
+	}
+
+	@Test
+	public void testClear() throws IOException {
+		AudioTextSearchIndexStore store = new AudioTextSearchIndexStore(directory);
+		store.writeBase(store.rotate(), 1, List.of(createEntry(1, "memory motel")));
+		store.append(2, List.of(2L), List.of(createEntry(2, "start me up")));
+		store.clear(3);
+		store.close();
+
+		store = new AudioTextSearchIndexStore(directory);
+		assertTrue(load(store).isEmpty());
+	}
+
+	private Map<Long, TrackIndexEntry> load(AudioTextSearchIndexStore store) throws IOException {
+		Map<Long, TrackIndexEntry> entries = new TreeMap<>();
+		assertTrue(store.load(e -> entries.put(e.id(), e), entries::remove).isPresent());
+		return entries;
+	}
+
+	private TrackIndexEntry createEntry(long id, String name) {
+		return new TrackIndexEntry(id, name, 10L, "Rolling Stones", 20L, "Tattoo You", 30L, "CD 1", 40L, "Rock");
+	}
+}
@@ -2,11 +2,16 @@ package de.kobich.audiosolutions.core.service.search;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.time.StopWatch;
@@ -18,6 +23,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import de.kobich.audiosolutions.core.AudioSolutions;
 import de.kobich.audiosolutions.core.service.AudioAttribute;
 import de.kobich.audiosolutions.core.service.AudioData;
 import de.kobich.audiosolutions.core.service.AudioDataChange;
@@ -29,6 +35,8 @@ import de.kobich.audiosolutions.core.service.persist.AudioPersistenceService;
 import de.kobich.audiosolutions.core.service.persist.domain.Album;
 import de.kobich.audiosolutions.core.service.persist.domain.Artist;
 import de.kobich.audiosolutions.core.service.persist.domain.Track;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchExecutor.Branch;
+import de.kobich.audiosolutions.core.service.search.AudioTextSearchExecutor.BranchStatistics;
 import de.kobich.commons.monitor.progress.IServiceProgressMonitor;
 import de.kobich.commons.monitor.progress.SysoutProgressMonitor;
 import de.kobich.component.file.FileDescriptor;
@@ -43,9 +51,13 @@ public class AudioTextSearchServiceTest {
 	private AudioTextSearchService textSearchService;
 	@Autowired
 	private AudioSearchService searchService;
+	@Autowired
+	private AudioTextSearchExecutor searchExecutor;
+	@Autowired
+	private AudioTextSearchResultCache resultCache;
 
 	@BeforeAll
-	public static void init(@Autowired AudioPersistenceService persistenceService, @Autowired AudioDataService dataService) throws AudioException {
+	public static void init(@Autowired AudioPersistenceService persistenceService, @Autowired AudioDataService dataService, @Autowired AudioTextSearchIndex searchIndex) throws AudioException {
 		Set<AudioDataChange> audioFiles = new HashSet<>();
 		audioFiles.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/memory motel.mp3").medium(CD_1).genre("Rock").artist(TestUtils.STONES).track("memory motel").build());
 		audioFiles.add(TestUtils.createAudioDataChangeBuilder("/cdrom/Rolling Stones/Tattoo You/start me up.mp3").artist(TestUtils.STONES).genre("Rock").album("Tattoo You").track("start me up").build());
@@ -76,6 +88,9 @@ public class AudioTextSearchServiceTest {
 		assertEquals(11, persistenceService.getCount(AudioAttribute.ARTIST));
 		assertEquals(6, persistenceService.getCount(AudioAttribute.GENRE));
 		assertEquals(3, persistenceService.getCount(AudioAttribute.MEDIUM));
+		// searches use the index
+		searchIndex.build();
+		assertTrue(searchIndex.isReady());
 	}
 	
 	@AfterAll
@@ -99,6 +114,23 @@ public class AudioTextSearchServiceTest {
 		assertEquals(10, res.getArtists().size());
 	}
 	
+	@Test
+	public void findFirstProposals() {
+		// more names contain the texts than requested: the index proposes the same first names as the database
+		for (AudioAttribute attribute : List.of(AudioAttribute.ARTIST, AudioAttribute.TRACK)) {
+			for (String text : List.of("e", "in", "the", "ing")) {
+				List<String> proposals = searchService.searchProposals(attribute, text, 1);
+				System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+				try {
+					assertEquals(searchService.searchProposals(attribute, text, 1), proposals, text);
+				}
+				finally {
+					System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+				}
+			}
+		}
+	}
+	
 	@Test
 	public void findNotArtists() throws AudioException {
 		AudioTextSearchResult res = textSearchService.search("-artist:rolli", 10);
@@ -174,6 +206,25 @@ public class AudioTextSearchServiceTest {
 		assertTrue(trackNames.contains("start me up"));
 	}
 
+	@Test
+	public void findByIndexAndDatabase() throws AudioException {
+		List<String> inputs = List.of("", "stones", "roll track: sympa", "-artist: stones track:the", "stones -album:tattoo", "-album: best ACDC", "stones -genre:rock", "genre:rock -medium:disk", "be", "x", "artist:ac");
+		for (String input : inputs) {
+			AudioTextSearchResult indexResult = textSearchService.search(input, 100);
+			System.setProperty(AudioSolutions.SEARCH_INDEX_PROP, Boolean.FALSE.toString());
+			resultCache.invalidate();
+			try {
+				AudioTextSearchResult dbResult = textSearchService.search(input, 100);
+				assertEquals(new HashSet<>(dbResult.getArtists()), new HashSet<>(indexResult.getArtists()), input);
+				assertEquals(new HashSet<>(dbResult.getAlbums()), new HashSet<>(indexResult.getAlbums()), input);
+				assertEquals(new HashSet<>(dbResult.getTracks()), new HashSet<>(indexResult.getTracks()), input);
+			}
+			finally {
+				System.clearProperty(AudioSolutions.SEARCH_INDEX_PROP);
+			}
+		}
+	}
+	
 	@Test
 	public void testOpenResult() throws AudioException {
 		List<Album> albums = textSearchService.searchAlbums("artist : beatles best of", 10);
@@ -205,6 +256,78 @@ public class AudioTextSearchServiceTest {
 		assertEquals(1, res.getTracks().size());
 	}
 	
+	@Test
+	public void testResultCache() throws AudioException {
+		resultCache.invalidate();
+		resultCache.resetStatistics();
+		AudioTextSearchResult res = textSearchService.search("stones -album:tattoo", 10);
+		assertEquals(0, resultCache.getStatistics().hits());
+		assertEquals(3, resultCache.getStatistics().misses());
+		// same tokens in another order and case
+		AudioTextSearchResult cachedRes = textSearchService.search("-album:TATTOO Stones", 10);
+		assertEquals(3, resultCache.getStatistics().hits());
+		assertEquals(0.5, resultCache.getStatistics().hitRatio());
+		assertEquals(1, resultCache.getStatistics().entries());
+		assertTrue(resultCache.getStatistics().memoryBytes() > 0);
+		assertEquals(res.getArtists().stream().map(Artist::getId).toList(), cachedRes.getArtists().stream().map(Artist::getId).toList());
+		assertEquals(res.getAlbums().stream().map(Album::getId).toList(), cachedRes.getAlbums().stream().map(Album::getId).toList());
+		assertEquals(res.getTracks().stream().map(Track::getId).toList(), cachedRes.getTracks().stream().map(Track::getId).toList());
+		// other max. number of results
+		textSearchService.search("stones -album:tattoo", 1);
+		assertEquals(3, resultCache.getStatistics().hits());
+		
+		// results searched before a change are not cached
+		AudioTextSearchTokens tokens = new AudioTextSearchTokens();
+		tokens.addToken(new AudioTextSearchToken(AudioTextSearchToken.SearchTokenType.UNDEFINED, "stones"));
+		AudioTextSearchResultCache.Key key = resultCache.createKey(tokens, 10);
+		long version = resultCache.getVersion();
+		resultCache.invalidate();
+		resultCache.put(key, Branch.ARTISTS, version, List.of(1L));
+		assertNull(resultCache.get(key, Branch.ARTISTS));
+		assertEquals(0, resultCache.getStatistics().entries());
+	}
+	
+	@Test
+	public void testSearchStatistics() throws AudioException {
+		searchExecutor.resetStatistics();
+		AudioTextSearchResult res = textSearchService.searchSimultaneously("roll track: sympat", 10, "test");
+		assertEquals(1, res.getTracks().size());
+		List<BranchStatistics> statistics = searchExecutor.getStatistics();
+		assertEquals(Branch.values().length, statistics.size());
+		statistics.forEach(s -> assertTrue(s.count() >= 1, s.branch().name()));
+	}
+	
+	@Test
+	public void testSupersededSearch() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		AudioTextSearchExecutor.Search first = searchExecutor.begin("test");
+		CompletableFuture<String> running = first.submit(Branch.TRACKS, () -> {
+			started.countDown();
+			try {
+				finish.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "first";
+		});
+		try {
+			started.await();
+			try (AudioTextSearchExecutor.Search second = searchExecutor.begin("test")) {
+				assertTrue(first.isCancelled());
+				assertThrows(CancellationException.class, running::get);
+				// branches submitted after cancelling are skipped
+				assertThrows(CancellationException.class, () -> first.submit(Branch.ALBUMS, () -> "first").get());
+				assertEquals("second", second.submit(Branch.TRACKS, () -> "second").get());
+			}
+		}
+		finally {
+			finish.countDown();
+			first.close();
+		}
+	}
+	
 	@Test
 	public void testParallelPerformance() throws Exception {
 		StopWatch watch = new StopWatch();